@@ -4,6 +4,7 @@ import java.io.File;
 
 import org.apache.logging.log4j.Logger;
 
+import factionmod.capability.PlayerData;
 import factionmod.command.CommandAdmin;
 import factionmod.command.CommandFaction;
 import factionmod.command.CommandReloadConfig;
@@ -22,6 +23,8 @@ import net.minecraftforge.fml.common.event.FMLInterModComms.IMCEvent;
 import net.minecraftforge.fml.common.event.FMLInterModComms.IMCMessage;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
+import net.minecraftforge.fml.common.event.FMLServerStoppedEvent;
+import net.minecraftforge.fml.common.event.FMLServerStoppingEvent;
 import net.minecraftforge.server.permission.DefaultPermissionLevel;
 import net.minecraftforge.server.permission.PermissionAPI;
 
@@ -69,6 +72,8 @@ public class FactionMod {
         ConfigLoader.initDirectory();
         ConfigLoader.loadConfigFile();
 
+        PlayerData.register();
+
         ServerUtils.getProfiler().startSection("IMCMessagesSending");
 
         ServerUtils.getProfiler().endSection();
@@ -135,4 +140,14 @@ public class FactionMod {
         ServerUtils.getProfiler().endSection();
     }
 
+    @EventHandler
+    public void onServerStopping(final FMLServerStoppingEvent event) {
+        FactionModDatas.flush();
+    }
+
+    @EventHandler
+    public void onServerStopped(final FMLServerStoppedEvent event) {
+        FactionModDatas.close();
+    }
+
 }
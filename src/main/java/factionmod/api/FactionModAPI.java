@@ -20,7 +20,7 @@ public class FactionModAPI {
 
         /**
          * Adds the specified amoutn of experience to the specified
-         * {@link Faction}.
+         * {@link Faction}. The experience is added at the end of the tick.
          * 
          * @param faction
          *            The {@link Faction}
@@ -88,10 +88,7 @@ public class FactionModAPI {
          *         {@link Faction}
          */
         public static Faction getFactionOf(UUID uuid) {
-            String name = EventHandlerFaction.getFactionOf(uuid);
-            if (name.isEmpty())
-                return null;
-            return EventHandlerFaction.getFaction(name);
+            return EventHandlerFaction.getUserFaction(uuid);
         }
 
         /**
@@ -0,0 +1,175 @@
+package factionmod.capability;
+
+import factionmod.FactionMod;
+import factionmod.faction.Faction;
+import factionmod.manager.IChunkManager;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.common.capabilities.Capability;
+import net.minecraftforge.common.capabilities.CapabilityInject;
+import net.minecraftforge.common.capabilities.CapabilityManager;
+import net.minecraftforge.common.capabilities.ICapabilityProvider;
+
+/**
+ * Datas of the mod attached to each player : his faction, if he's admin and
+ * the manager of the chunk he's in. It avoids looking into the static maps of
+ * the handlers in the events fired very often. Nothing is saved, the datas are
+ * set again when the player logs in.
+ *
+ * @author BrokenSwing
+ *
+ */
+public class PlayerData {
+
+    @CapabilityInject(PlayerData.class)
+    public static Capability<PlayerData> CAPABILITY = null;
+
+    public static final ResourceLocation KEY        = new ResourceLocation(FactionMod.MODID, "player_data");
+
+    private Faction                      faction;
+    private boolean                      admin;
+
+    private IChunkManager                manager;
+    private int                          managerVersion = -1;
+    private int                          managerDimension;
+    private int                          managerChunkX;
+    private int                          managerChunkZ;
+
+    /**
+     * Registers the capability, must be called during the pre-initialization.
+     */
+    public static void register() {
+        CapabilityManager.INSTANCE.register(PlayerData.class, new Capability.IStorage<PlayerData>() {
+
+            @Override
+            public NBTBase writeNBT(Capability<PlayerData> capability, PlayerData instance, EnumFacing side) {
+                return null;
+            }
+
+            @Override
+            public void readNBT(Capability<PlayerData> capability, PlayerData instance, EnumFacing side, NBTBase nbt) {}
+
+        }, PlayerData::new);
+    }
+
+    /**
+     * Returns the datas of the player.
+     *
+     * @param player
+     *            The player
+     * @return the datas or null if the player hasn't any, it's the case of
+     *         players on the client side
+     */
+    public static PlayerData get(EntityPlayer player) {
+        return CAPABILITY == null ? null : player.getCapability(CAPABILITY, null);
+    }
+
+    /**
+     * Returns the faction of the player.
+     *
+     * @return the faction or null
+     */
+    public Faction getFaction() {
+        return this.faction;
+    }
+
+    public void setFaction(Faction faction) {
+        this.faction = faction;
+    }
+
+    /**
+     * Indicates if the player is admin.
+     *
+     * @return true if the player is admin
+     */
+    public boolean isAdmin() {
+        return this.admin;
+    }
+
+    public void setAdmin(boolean admin) {
+        this.admin = admin;
+    }
+
+    /**
+     * Indicates if the cached manager is still the manager of the given chunk.
+     *
+     * @param version
+     *            The current version of the managers, it changes each time a
+     *            manager is registered or unregistered
+     * @param dimension
+     *            The dimension of the chunk
+     * @param chunkX
+     *            The x coordinate of the chunk
+     * @param chunkZ
+     *            The z coordinate of the chunk
+     * @return true if {@link PlayerData#getManager()} can be used
+     */
+    public boolean isManagerCached(int version, int dimension, int chunkX, int chunkZ) {
+        return this.managerVersion == version && this.managerChunkX == chunkX && this.managerChunkZ == chunkZ && this.managerDimension == dimension;
+    }
+
+    /**
+     * Returns the last known manager of the chunk the player is in.
+     *
+     * @return the manager, can be null
+     */
+    public IChunkManager getManager() {
+        return this.manager;
+    }
+
+    /**
+     * Caches the manager of the chunk the player is in.
+     *
+     * @param manager
+     *            The manager, can be null
+     * @param version
+     *            The current version of the managers
+     * @param dimension
+     *            The dimension of the chunk
+     * @param chunkX
+     *            The x coordinate of the chunk
+     * @param chunkZ
+     *            The z coordinate of the chunk
+     */
+    public void setManager(IChunkManager manager, int version, int dimension, int chunkX, int chunkZ) {
+        this.manager = manager;
+        this.managerVersion = version;
+        this.managerDimension = dimension;
+        this.managerChunkX = chunkX;
+        this.managerChunkZ = chunkZ;
+    }
+
+    /**
+     * Copies the faction and the admin state of an other player, used when
+     * the player is cloned.
+     *
+     * @param other
+     *            The datas to copy
+     */
+    public void copyFrom(PlayerData other) {
+        this.faction = other.faction;
+        this.admin = other.admin;
+    }
+
+    /**
+     * Attaches a {@link PlayerData} to a player.
+     */
+    public static class Provider implements ICapabilityProvider {
+
+        private final PlayerData data = new PlayerData();
+
+        @Override
+        public boolean hasCapability(Capability<?> capability, EnumFacing facing) {
+            return capability == CAPABILITY;
+        }
+
+        @Override
+        public <T> T getCapability(Capability<T> capability, EnumFacing facing) {
+            return capability == CAPABILITY ? CAPABILITY.cast(this.data) : null;
+        }
+
+    }
+
+}
@@ -363,7 +363,7 @@ public class CommandFaction extends CommandBase {
             }
         } else {
             // The player has a faction
-            Faction faction = getFaction(getFactionOf(player.getUniqueID()));
+            Faction faction = getUserFaction(player.getUniqueID());
 
             if (args.length == 1)
                 return AutoCompleter.complete(args[0], IN_FACTION_COMMANDS);
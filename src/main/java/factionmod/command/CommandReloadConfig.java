@@ -5,6 +5,7 @@ import java.util.List;
 import com.google.common.collect.Lists;
 
 import factionmod.config.ConfigLoader;
+import factionmod.faction.Levels;
 import factionmod.utils.MessageHelper;
 import net.minecraft.command.CommandException;
 import net.minecraft.command.ICommand;
@@ -39,6 +40,7 @@ public class CommandReloadConfig implements ICommand {
     @Override
     public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
         ConfigLoader.loadConfigFile();
+        Levels.invalidate();
         sender.sendMessage(MessageHelper.info("Configuration reloaded !"));
     }
 
@@ -1,6 +1,8 @@
 package factionmod.config;
 
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -8,6 +10,7 @@ import com.google.gson.JsonPrimitive;
 
 import factionmod.FactionMod;
 import factionmod.utils.ServerUtils;
+import net.minecraft.entity.Entity;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.common.config.Configuration;
 import net.minecraftforge.common.config.Property;
@@ -25,6 +28,8 @@ public class ConfigExperience {
 
     private static final HashMap<String, Integer> EXP_VALUES    = new HashMap<>();
     private static final HashMap<String, String>  STRING_VALUES = new HashMap<>();
+    /** The experience earned when killing an entity, by class of entity */
+    private static final IdentityHashMap<Class<? extends Entity>, Integer> KILL_VALUES = new IdentityHashMap<>();
 
     /**
      * Loads all the values from a {@link JsonObject}.
@@ -42,6 +47,8 @@ public class ConfigExperience {
         EXP_VALUES.put("kill_wither", getInt("kill_wither", element, 400));
         EXP_VALUES.put("kill_enemy", getInt("kill_enemy", element, 7));
 
+        buildKillValues();
+
         ServerUtils.getProfiler().endSection();
     }
 
@@ -86,17 +93,46 @@ public class ConfigExperience {
             }
         });
 
-        p = config.get(CAT, "experience_from_level", "100 + (%1$s * %1$s * LOG(%1$s)) / 8");
-        p.setComment("The expression for the amount of experience needed to reach the level which is represented by %1$s");
+        p = config.get(CAT, "experience_from_level", "100 + (level * level * LOG(level)) / 8");
+        p.setComment("The expression for the amount of experience needed to reach a level. It can use the variables level, members, chunks, damages and online_members of the faction");
         STRING_VALUES.put("experience_from_level", p.getString());
 
-        p = config.get(CAT, "chunk_count_from_level", "1.3 * %1$s + 3");
-        p.setComment("The maximum of chunk a faction can have at the level which is represented by %1$s");
+        p = config.get(CAT, "chunk_count_from_level", "1.3 * level + 3");
+        p.setComment("The maximum of chunk a faction can have at a level. It can use the variables level, members, chunks, damages and online_members of the faction");
         STRING_VALUES.put("chunk_count_from_level", p.getString());
 
+        buildKillValues();
+
         ServerUtils.getProfiler().endSection();
     }
 
+    /**
+     * Fills the table of the experience earned when killing an entity, so a
+     * kill doesn't need to look for the entity in the registry. The entities
+     * which don't give experience aren't in the table.
+     */
+    private static void buildKillValues() {
+        KILL_VALUES.clear();
+        for(Map.Entry<ResourceLocation, EntityEntry> entry : ForgeRegistries.ENTITIES.getEntries()) {
+            final int exp = getExpFor("kill_" + entry.getKey().toString());
+            if (exp > 0)
+                KILL_VALUES.merge(entry.getValue().getEntityClass(), exp, Integer::sum);
+        }
+    }
+
+    /**
+     * Returns the amount of experience earned when killing an entity of the
+     * specified class.
+     * 
+     * @param entityClass
+     *            The class of the entity
+     * @return the amount of experience earned
+     */
+    public static int getExpForKill(final Class<? extends Entity> entityClass) {
+        final Integer exp = KILL_VALUES.get(entityClass);
+        return exp == null ? 0 : exp.intValue();
+    }
+
     /**
      * Returns the amount of experience earned for the specified action.
      * 
@@ -10,10 +10,11 @@ import net.minecraftforge.common.config.Property;
 
 public class ConfigGeneral {
 
-    private static final HashMap<String, Integer> INT_VALUES  = new HashMap<>();
-    private static final HashMap<String, Boolean> BOOL_VALUES = new HashMap<>();
+    private static final HashMap<String, Integer> INT_VALUES    = new HashMap<>();
+    private static final HashMap<String, Boolean> BOOL_VALUES   = new HashMap<>();
+    private static final HashMap<String, String>  STRING_VALUES = new HashMap<>();
 
-    private static final String                   CAT         = Configuration.CATEGORY_GENERAL;
+    private static final String                   CAT           = Configuration.CATEGORY_GENERAL;
 
     /**
      * Loads the general configuration using the Forge system.
@@ -60,6 +61,35 @@ public class ConfigGeneral {
         p.setMaxValue(Integer.MAX_VALUE);
         INT_VALUES.put("damages_persistence", p.getInt());
 
+        p = config.get(CAT, "async_save", true);
+        p.setComment("Set it to false to write the datas of the factions on the server thread when the world is saved");
+        BOOL_VALUES.put("async_save", p.getBoolean());
+
+        p = config.get(CAT, "journal", true);
+        p.setComment("Set it to false to stop recording the modifications of the factions between two saves. They are recorded to be recovered after a crash");
+        BOOL_VALUES.put("journal", p.getBoolean());
+
+        p = config.get(CAT, "journal_compaction_size", 1024);
+        p.setComment("The size (in KB) of the journal above which the modified datas are saved and the journal is emptied");
+        p.setMinValue(1);
+        p.setMaxValue(Integer.MAX_VALUE / 1024);
+        INT_VALUES.put("journal_compaction_size", p.getInt());
+
+        p = config.get(CAT, "save_interval", 30);
+        p.setComment("The minimum time (in seconds) between two saves of the modified datas. The modifications are written together, the world saves and the creation or the removal of a faction are written at the end of the tick");
+        p.setMinValue(0);
+        p.setMaxValue(3600);
+        INT_VALUES.put("save_interval", p.getInt());
+
+        p = config.get(CAT, "storage", "files");
+        p.setComment("Where the datas of the factions are saved : \"files\" writes one file per faction and per region of claims, \"database\" uses an embedded H2 database which can be queried by external tools, it needs h2-1.4.197.jar in the mods folder. The datas are migrated when it's changed");
+        p.setValidValues(new String[] { "files", "database" });
+        STRING_VALUES.put("storage", p.getString());
+
+        p = config.get(CAT, "claims_in_chunks", false);
+        p.setComment("Set it to true to save the claims of the factions in the chunks. They are kept in memory only while their chunk is loaded, each faction still knows its claims. To disable it, set it to false and restart the server : the claims are restored from the factions and saved with the other datas");
+        BOOL_VALUES.put("claims_in_chunks", p.getBoolean());
+
         ServerUtils.getProfiler().endSection();
     }
 
@@ -87,6 +117,18 @@ public class ConfigGeneral {
         return BOOL_VALUES.containsKey(key) ? BOOL_VALUES.get(key) : false;
     }
 
+    /**
+     * Returns the string value linked to the specified key. Returns an empty
+     * string by default.
+     * 
+     * @param key
+     *            The key
+     * @return the string value
+     */
+    public static String getString(String key) {
+        return STRING_VALUES.containsKey(key) ? STRING_VALUES.get(key) : "";
+    }
+
     /**
      * Loads the general configuration from a JsonObject.
      * 
@@ -103,6 +145,15 @@ public class ConfigGeneral {
         INT_VALUES.put("damages_needed_to_counter_claim", ConfigExperience.getInt("damagesNeededToCounterClaim", obj, 5));
         INT_VALUES.put("teleportation_delay", ConfigExperience.getInt("teleportationDelay", obj, 10));
 
+        // The options added after the JSON format take the default values of
+        // the Forge configuration
+        BOOL_VALUES.put("async_save", true);
+        BOOL_VALUES.put("journal", true);
+        INT_VALUES.put("journal_compaction_size", 1024);
+        INT_VALUES.put("save_interval", 30);
+        STRING_VALUES.put("storage", "files");
+        BOOL_VALUES.put("claims_in_chunks", false);
+
         ServerUtils.getProfiler().endSection();
     }
 
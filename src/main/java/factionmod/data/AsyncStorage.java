@@ -0,0 +1,91 @@
+package factionmod.data;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+import factionmod.FactionMod;
+
+/**
+ * An {@link IStorage} which can write on a background thread. The records are
+ * serialized on the server thread, then written by a single background thread.
+ * Only one write can be in flight, if the previous one isn't finished the
+ * records stay modified and will be written later.
+ *
+ * @author BrokenSwing
+ *
+ */
+public abstract class AsyncStorage implements IStorage {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(AsyncStorage::newSavingThread);
+    private Future<?>             inFlight = null;
+
+    private static Thread newSavingThread(Runnable runnable) {
+        final Thread thread = new Thread(runnable, "FactionMod saving");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Serializes the modified records and forgets they were modified. Called
+     * on the server thread.
+     *
+     * @return the write of the records, returning true if everything was
+     *         written. It can be called from any thread
+     */
+    protected abstract BooleanSupplier snapshot();
+
+    /**
+     * Releases the resources of the storage, called once the last write is
+     * finished.
+     */
+    protected void release() {}
+
+    @Override
+    public boolean flush(boolean async, Runnable onWritten) {
+        if (async) {
+            if (this.isWriting())
+                return false;
+            final BooleanSupplier write = this.snapshot();
+            this.inFlight = this.executor.submit(() -> {
+                if (write.getAsBoolean() && onWritten != null)
+                    onWritten.run();
+            });
+        } else {
+            this.waitForWrites();
+            if (this.snapshot().getAsBoolean() && onWritten != null)
+                onWritten.run();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isWriting() {
+        return this.inFlight != null && !this.inFlight.isDone();
+    }
+
+    @Override
+    public void waitForWrites() {
+        if (this.inFlight != null) {
+            try {
+                this.inFlight.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                FactionMod.getLogger().error("The saving of the faction datas failed");
+                e.printStackTrace();
+            }
+            this.inFlight = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        this.waitForWrites();
+        this.executor.shutdown();
+        this.release();
+    }
+
+}
@@ -0,0 +1,376 @@
+package factionmod.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+import org.h2.Driver;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import factionmod.FactionMod;
+import factionmod.faction.Faction;
+import factionmod.faction.Member;
+import factionmod.handler.EventHandlerChunk;
+import factionmod.handler.EventHandlerFaction;
+import factionmod.manager.instanciation.ZoneInstance;
+import factionmod.utils.DimensionalPosition;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * An {@link IStorage} saving the factions and the claims in an embedded H2
+ * database, stored in a single file. The modifications of each tick are
+ * written in a transaction.
+ * <p>
+ * The tables can be queried by external tools while the server is stopped :
+ * <ul>
+ * <li>factions (name, display_name, level, exp, data) : the name is in lower
+ * case, data is the compressed NBT of the faction</li>
+ * <li>members (uuid, faction, grade, experience) : indexed by faction</li>
+ * <li>claims (dim, x, z, zone, args) : the arguments of the zone are a JSON
+ * array of strings, indexed by zone and arguments</li>
+ * </ul>
+ *
+ * @author BrokenSwing
+ *
+ */
+public class DatabaseStorage extends AsyncStorage {
+
+    private static final String[]              SCHEMA         = {
+            "CREATE TABLE IF NOT EXISTS factions (name VARCHAR(255) PRIMARY KEY, display_name VARCHAR(255) NOT NULL, level INT NOT NULL, exp INT NOT NULL, data BLOB NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS members (uuid VARCHAR(36) PRIMARY KEY, faction VARCHAR(255) NOT NULL, grade VARCHAR(255) NOT NULL, experience INT NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS members_faction ON members (faction)",
+            "CREATE TABLE IF NOT EXISTS claims (dim INT NOT NULL, x INT NOT NULL, z INT NOT NULL, zone VARCHAR(255) NOT NULL, args VARCHAR(1024) NOT NULL, PRIMARY KEY (dim, x, z))",
+            "CREATE INDEX IF NOT EXISTS claims_instance ON claims (zone, args)" };
+
+    private static final Gson                  GSON           = new Gson();
+
+    private final Connection                   connection;
+
+    /** Lowercase names of the factions to write or delete */
+    private final HashSet<String>              dirtyFactions  = new HashSet<String>();
+    /** The chunks of which the claims have to be written or deleted */
+    private final HashSet<DimensionalPosition> dirtyClaims    = new HashSet<DimensionalPosition>();
+    /** Whether the tables have to be emptied before writing */
+    private boolean                            clear          = false;
+
+    /** The records of the transactions which failed */
+    private final Queue<String>                failedFactions = new ConcurrentLinkedQueue<String>();
+    private final Queue<DimensionalPosition>   failedClaims   = new ConcurrentLinkedQueue<DimensionalPosition>();
+    private volatile boolean                   failedClear    = false;
+
+    /**
+     * Opens the database, it's created if it doesn't exist.
+     *
+     * @param file
+     *            The file of the database, without extension
+     * @throws SQLException
+     *             if the database can't be opened
+     */
+    public DatabaseStorage(File file) throws SQLException {
+        file.getParentFile().mkdirs();
+        this.connection = new Driver().connect("jdbc:h2:" + file.getAbsolutePath(), new Properties());
+        try (Statement statement = this.connection.createStatement()) {
+            for(String sql : SCHEMA) {
+                statement.execute(sql);
+            }
+        }
+        this.connection.setAutoCommit(false);
+    }
+
+    @Override
+    public String getName() {
+        return "database";
+    }
+
+    @Override
+    public void markFaction(String name) {
+        this.dirtyFactions.add(name.toLowerCase());
+    }
+
+    @Override
+    public void markClaim(DimensionalPosition position) {
+        this.dirtyClaims.add(position);
+    }
+
+    /**
+     * Marks every faction and every claim as modified, the rows of the
+     * factions and the claims which don't exist anymore are deleted at the
+     * next flush.
+     */
+    @Override
+    public void markAll() {
+        this.clear = true;
+        for(Faction faction : EventHandlerFaction.getFactions().values()) {
+            this.markFaction(faction.getName());
+        }
+        EventHandlerChunk.forEachZoneInstance((dim, x, z, instance) -> this.dirtyClaims.add(new DimensionalPosition(new ChunkPos(x, z), dim)));
+    }
+
+    @Override
+    public boolean isDirty() {
+        return this.clear || this.failedClear || !this.dirtyFactions.isEmpty() || !this.dirtyClaims.isEmpty() || !this.failedFactions.isEmpty()
+                || !this.failedClaims.isEmpty();
+    }
+
+    @Override
+    public boolean isTransactional() {
+        return true;
+    }
+
+    @Override
+    protected BooleanSupplier snapshot() {
+        String failedFaction;
+        while ((failedFaction = this.failedFactions.poll()) != null) {
+            this.dirtyFactions.add(failedFaction);
+        }
+        DimensionalPosition failedClaim;
+        while ((failedClaim = this.failedClaims.poll()) != null) {
+            this.dirtyClaims.add(failedClaim);
+        }
+        final boolean clear = this.clear || this.failedClear;
+        this.clear = false;
+        this.failedClear = false;
+
+        final ArrayList<FactionRow> factions = new ArrayList<FactionRow>(this.dirtyFactions.size());
+        for(String name : this.dirtyFactions) {
+            factions.add(new FactionRow(name, EventHandlerFaction.getFaction(name)));
+        }
+        this.dirtyFactions.clear();
+
+        final ArrayList<ClaimRow> claims = new ArrayList<ClaimRow>(this.dirtyClaims.size());
+        for(DimensionalPosition position : this.dirtyClaims) {
+            claims.add(new ClaimRow(position, EventHandlerChunk.getZoneInstance(position.getDimension(), position.getPos().x, position.getPos().z)));
+        }
+        this.dirtyClaims.clear();
+
+        return () -> this.write(clear, factions, claims);
+    }
+
+    /**
+     * Writes the rows in a transaction. If it fails, the transaction is rolled
+     * back and the records will be written at the next flush.
+     */
+    private synchronized boolean write(boolean clear, List<FactionRow> factions, List<ClaimRow> claims) {
+        if (!clear && factions.isEmpty() && claims.isEmpty())
+            return true;
+        try {
+            if (clear) {
+                try (Statement statement = this.connection.createStatement()) {
+                    statement.executeUpdate("DELETE FROM claims");
+                    statement.executeUpdate("DELETE FROM members");
+                    statement.executeUpdate("DELETE FROM factions");
+                }
+            }
+            this.writeFactions(factions);
+            this.writeClaims(claims);
+            this.connection.commit();
+            FactionMod.getLogger().debug("Saved " + factions.size() + " modified factions and " + claims.size() + " modified claims");
+            return true;
+        } catch (SQLException | IOException e) {
+            FactionMod.getLogger().warn("Couldn't write the factions in the database");
+            e.printStackTrace();
+            try {
+                this.connection.rollback();
+            } catch (SQLException e1) {
+                e1.printStackTrace();
+            }
+            if (clear)
+                this.failedClear = true;
+            for(FactionRow faction : factions) {
+                this.failedFactions.add(faction.name);
+            }
+            for(ClaimRow claim : claims) {
+                this.failedClaims.add(claim.position);
+            }
+            return false;
+        }
+    }
+
+    private void writeFactions(List<FactionRow> factions) throws SQLException, IOException {
+        try (PreparedStatement deleteFaction = this.connection.prepareStatement("DELETE FROM factions WHERE name = ?");
+                PreparedStatement deleteMembers = this.connection.prepareStatement("DELETE FROM members WHERE faction = ?");
+                PreparedStatement mergeFaction = this.connection
+                        .prepareStatement("MERGE INTO factions (name, display_name, level, exp, data) KEY (name) VALUES (?, ?, ?, ?, ?)");
+                PreparedStatement mergeMember = this.connection.prepareStatement("MERGE INTO members (uuid, faction, grade, experience) KEY (uuid) VALUES (?, ?, ?, ?)")) {
+            for(FactionRow faction : factions) {
+                deleteMembers.setString(1, faction.name);
+                deleteMembers.addBatch();
+                if (faction.nbt == null) {
+                    deleteFaction.setString(1, faction.name);
+                    deleteFaction.addBatch();
+                    continue;
+                }
+                final ByteArrayOutputStream data = new ByteArrayOutputStream();
+                CompressedStreamTools.writeCompressed(faction.nbt, data);
+                mergeFaction.setString(1, faction.name);
+                mergeFaction.setString(2, faction.nbt.getString("name"));
+                mergeFaction.setInt(3, faction.level);
+                mergeFaction.setInt(4, faction.exp);
+                mergeFaction.setBytes(5, data.toByteArray());
+                mergeFaction.addBatch();
+            }
+            deleteMembers.executeBatch();
+            deleteFaction.executeBatch();
+            mergeFaction.executeBatch();
+
+            for(FactionRow faction : factions) {
+                for(MemberRow member : faction.members) {
+                    mergeMember.setString(1, member.uuid);
+                    mergeMember.setString(2, faction.name);
+                    mergeMember.setString(3, member.grade);
+                    mergeMember.setInt(4, member.experience);
+                    mergeMember.addBatch();
+                }
+            }
+            mergeMember.executeBatch();
+        }
+    }
+
+    private void writeClaims(List<ClaimRow> claims) throws SQLException {
+        try (PreparedStatement delete = this.connection.prepareStatement("DELETE FROM claims WHERE dim = ? AND x = ? AND z = ?");
+                PreparedStatement merge = this.connection.prepareStatement("MERGE INTO claims (dim, x, z, zone, args) KEY (dim, x, z) VALUES (?, ?, ?, ?, ?)")) {
+            for(ClaimRow claim : claims) {
+                final PreparedStatement statement = claim.instance == null ? delete : merge;
+                statement.setInt(1, claim.position.getDimension());
+                statement.setInt(2, claim.position.getPos().x);
+                statement.setInt(3, claim.position.getPos().z);
+                if (claim.instance != null) {
+                    statement.setString(4, claim.instance.getZoneName());
+                    statement.setString(5, GSON.toJson(claim.instance.getArgs()));
+                }
+                statement.addBatch();
+            }
+            delete.executeBatch();
+            merge.executeBatch();
+        }
+    }
+
+    @Override
+    public synchronized List<NBTTagCompound> readFactions() {
+        final ArrayList<NBTTagCompound> factions = new ArrayList<NBTTagCompound>();
+        try (Statement statement = this.connection.createStatement(); ResultSet result = statement.executeQuery("SELECT name, data FROM factions")) {
+            while (result.next()) {
+                try {
+                    factions.add(CompressedStreamTools.readCompressed(new ByteArrayInputStream(result.getBytes(2))));
+                } catch (IOException e) {
+                    FactionMod.getLogger().warn("Couldn't read the faction " + result.getString(1) + " from the database");
+                    e.printStackTrace();
+                }
+            }
+        } catch (SQLException e) {
+            FactionMod.getLogger().error("Couldn't read the factions from the database");
+            e.printStackTrace();
+        }
+        return factions;
+    }
+
+    @Override
+    public synchronized List<PackedClaims.Group> readClaims() {
+        final PackedClaims.GroupsBuilder builder = new PackedClaims.GroupsBuilder();
+        try (Statement statement = this.connection.createStatement(); ResultSet result = statement.executeQuery("SELECT dim, x, z, zone, args FROM claims")) {
+            while (result.next()) {
+                builder.add(result.getInt(1), result.getInt(2), result.getInt(3), new ZoneInstance(result.getString(4), readArgs(result.getString(5))));
+            }
+        } catch (SQLException e) {
+            FactionMod.getLogger().error("Couldn't read the claims from the database");
+            e.printStackTrace();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads the arguments of a zone. The databases created by the previous
+     * versions separated them by spaces, they're read the same way.
+     */
+    private static String[] readArgs(String args) {
+        if (args.startsWith("[")) {
+            try {
+                return GSON.fromJson(args, String[].class);
+            } catch (JsonSyntaxException e) {}
+        }
+        return args.isEmpty() ? new String[0] : args.split(" ");
+    }
+
+    @Override
+    protected synchronized void release() {
+        try {
+            this.connection.close();
+        } catch (SQLException e) {
+            FactionMod.getLogger().warn("Couldn't close the database");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The row of a faction and of its members, the faction is removed if there
+     * is no compound.
+     */
+    private static final class FactionRow {
+
+        private final String          name;
+        private final NBTTagCompound  nbt;
+        private final int             level;
+        private final int             exp;
+        private final List<MemberRow> members = new ArrayList<MemberRow>();
+
+        private FactionRow(String name, Faction faction) {
+            this.name = name;
+            this.nbt = faction == null ? null : faction.serializeNBT();
+            this.level = faction == null ? 0 : faction.getLevel();
+            this.exp = faction == null ? 0 : faction.getExp();
+            if (faction != null) {
+                for(Member member : faction.getMembers()) {
+                    this.members.add(new MemberRow(member));
+                }
+            }
+        }
+
+    }
+
+    private static final class MemberRow {
+
+        private final String uuid;
+        private final String grade;
+        private final int    experience;
+
+        private MemberRow(Member member) {
+            this.uuid = member.getUUID().toString();
+            this.grade = member.getGrade().getName();
+            this.experience = member.getExperience();
+        }
+
+    }
+
+    /**
+     * The row of a claim, the claim is removed if there is no instance.
+     */
+    private static final class ClaimRow {
+
+        private final DimensionalPosition position;
+        private final ZoneInstance        instance;
+
+        private ClaimRow(DimensionalPosition position, ZoneInstance instance) {
+            this.position = position;
+            this.instance = instance;
+        }
+
+    }
+
+}
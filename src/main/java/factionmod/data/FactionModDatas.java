@@ -1,13 +1,25 @@
 package factionmod.data;
 
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Map.Entry;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
+import akka.japi.Pair;
 import factionmod.FactionMod;
+import factionmod.config.ConfigGeneral;
 import factionmod.event.FactionsLoadedEvent;
 import factionmod.faction.Faction;
 import factionmod.faction.Member;
 import factionmod.handler.EventHandlerChunk;
+import factionmod.handler.EventHandlerChunkData;
 import factionmod.handler.EventHandlerFaction;
 import factionmod.manager.IChunkManager;
 import factionmod.manager.instanciation.Zone;
@@ -21,34 +33,301 @@ import net.minecraft.world.storage.WorldSavedData;
 import net.minecraftforge.common.DimensionManager;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.common.util.Constants.NBT;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.Mod.EventBusSubscriber;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.Phase;
+import net.minecraftforge.fml.common.gameevent.TickEvent.ServerTickEvent;
 
 /**
- * This class is used to save the inventories of the faction.
+ * Saves the factions and the claims. Since the version 2 of the datas, this
+ * {@link WorldSavedData} only contains the version and the name of the
+ * storage, the factions and the claims are written by the {@link IStorage}
+ * selected in the configuration : an {@link IncrementalStorage} by default or a
+ * {@link DatabaseStorage}. Since the version 3, the claims files use the format
+ * described by {@link PackedClaims}. The modifications made between two saves
+ * are recorded in a {@link Journal}, unless the storage is transactional. The
+ * datas of the previous versions and of an other storage are migrated when
+ * loaded.
  * 
  * @author BrokenSwing
  *
  */
+@EventBusSubscriber(modid = FactionMod.MODID)
 public class FactionModDatas extends WorldSavedData {
 
-    public static final String     DATA_VERSION = "1";
-    public static final String     NAME         = FactionMod.MODID;
-    private static FactionModDatas SAVE         = new FactionModDatas(NAME);
+    public static final String        DATA_VERSION = "3";
+    public static final String        NAME         = FactionMod.MODID;
+    private static FactionModDatas    SAVE         = new FactionModDatas(NAME);
+    private static File               DIRECTORY    = null;
+    private static IStorage           STORAGE      = null;
+    private static Journal            JOURNAL      = null;
+    private static SaveCoordinator    COORDINATOR  = new SaveCoordinator();
+    /** The datas were read from an other storage than the configured one */
+    private static boolean            migrated     = false;
+    /** Modifications aren't tracked while the datas are read */
+    private static boolean            loading      = false;
+    /** The last saves are written on the server thread */
+    private static boolean            stopping     = false;
 
+    /**
+     * Marks all the factions and all the claims as modified. Prefer
+     * {@link FactionModDatas#save(Faction)} or
+     * {@link FactionModDatas#save(DimensionalPosition)}.
+     */
     public static void save() {
-        SAVE.markDirty();
+        if (loading)
+            return;
+        if (STORAGE != null)
+            STORAGE.markAll();
+        COORDINATOR.requestDurability();
+    }
+
+    /**
+     * Requests the modified datas to be written at the end of the tick, even
+     * if the last write is more recent than the interval between two saves.
+     * It should be called after an operation which shouldn't be lost.
+     */
+    public static void saveNow() {
+        COORDINATOR.requestDurability();
+    }
+
+    /**
+     * Marks the faction as modified, it will be written at the next save.
+     * 
+     * @param faction
+     *            The faction
+     */
+    public static void save(Faction faction) {
+        saveFaction(faction.getName());
+    }
+
+    /**
+     * Marks the faction with the given name as modified. If the faction doesn't
+     * exist anymore, its file is deleted at the next save.
+     * 
+     * @param name
+     *            The name of the faction
+     */
+    public static void saveFaction(String name) {
+        markFaction(name, Journal.CHANGE_ALL, SaveCoordinator.Category.FACTION);
+    }
+
+    /**
+     * Marks the level and the experience of the faction and of its members as
+     * modified.
+     * 
+     * @param faction
+     *            The faction
+     */
+    public static void saveExperience(Faction faction) {
+        markFaction(faction.getName(), Journal.CHANGE_EXPERIENCE, SaveCoordinator.Category.EXPERIENCE);
+    }
+
+    /**
+     * Marks the damages of the faction as modified.
+     * 
+     * @param faction
+     *            The faction
+     */
+    public static void saveDamages(Faction faction) {
+        markFaction(faction.getName(), Journal.CHANGE_DAMAGES, SaveCoordinator.Category.DAMAGES);
+    }
+
+    /**
+     * Marks the inventory of the faction with the given name as modified.
+     * 
+     * @param name
+     *            The name of the faction
+     */
+    public static void saveInventory(String name) {
+        markFaction(name, Journal.CHANGE_INVENTORY, SaveCoordinator.Category.INVENTORY);
+    }
+
+    /**
+     * Marks a chunk added to or removed from the chunks of the faction as
+     * modified.
+     * 
+     * @param faction
+     *            The faction
+     * @param position
+     *            The position of the chunk
+     * @param claimed
+     *            true if the chunk was added, false if it was removed
+     */
+    public static void saveChunk(Faction faction, DimensionalPosition position, boolean claimed) {
+        if (loading)
+            return;
+        markFaction(faction.getName(), 0, SaveCoordinator.Category.FACTION);
+        if (JOURNAL != null && ConfigGeneral.getBool("journal"))
+            JOURNAL.logFactionChunk(faction.getName(), position, claimed);
+    }
+
+    /**
+     * Marks a member joining or leaving the faction as modified.
+     * 
+     * @param faction
+     *            The faction
+     * @param member
+     *            The member
+     * @param joined
+     *            true if the member joined the faction, false if he left it
+     */
+    public static void saveMember(Faction faction, Member member, boolean joined) {
+        if (loading)
+            return;
+        markFaction(faction.getName(), 0, SaveCoordinator.Category.FACTION);
+        if (JOURNAL != null && ConfigGeneral.getBool("journal"))
+            JOURNAL.logMember(faction.getName(), member, joined);
+    }
+
+    /**
+     * Marks the faction as modified in the storage.
+     * 
+     * @param change
+     *            What to record in the journal, one of the CHANGE_ constants
+     *            of {@link Journal}, or 0 if the caller writes its own record
+     */
+    private static void markFaction(String name, int change, SaveCoordinator.Category category) {
+        if (loading)
+            return;
+        if (STORAGE != null)
+            STORAGE.markFaction(name);
+        if (change != 0 && JOURNAL != null && ConfigGeneral.getBool("journal"))
+            JOURNAL.logFaction(name, change);
+        COORDINATOR.mutation(category);
+    }
+
+    /**
+     * Marks the claim of the chunk as modified, it will be written at the next
+     * save.
+     * 
+     * @param position
+     *            The position of the chunk
+     */
+    public static void save(DimensionalPosition position) {
+        if (loading)
+            return;
+        if (STORAGE != null)
+            STORAGE.markClaim(position);
+        EventHandlerChunkData.onClaimModified(position);
+        if (JOURNAL != null && ConfigGeneral.getBool("journal")) {
+            final int x = position.getPos().x;
+            final int z = position.getPos().z;
+            JOURNAL.logClaim(position.getDimension(), x, z, EventHandlerChunk.getZoneInstance(position.getDimension(), x, z));
+        }
+        COORDINATOR.mutation(SaveCoordinator.Category.CLAIM);
+    }
+
+    /**
+     * Indicates the claim of the chunk isn't in memory anymore because it's
+     * stored in the chunk. The claim is removed from the storage at the next
+     * save, it isn't recorded in the journal because the chunk is still
+     * claimed.
+     * 
+     * @param position
+     *            The position of the chunk
+     */
+    public static void forgetClaim(DimensionalPosition position) {
+        if (loading || STORAGE == null)
+            return;
+        STORAGE.markClaim(position);
+    }
+
+    /**
+     * Returns the coordinator of the saves, it counts the modifications.
+     * 
+     * @return the coordinator
+     */
+    public static SaveCoordinator getSaveCoordinator() {
+        return COORDINATOR;
+    }
+
+    /**
+     * Writes the records of the journal at the end of each tick. The modified
+     * datas are written at most once per interval, unless a durable save was
+     * requested or the journal became too big. A transactional storage has no
+     * journal, the modifications of each tick are written.
+     */
+    @SubscribeEvent
+    public static void onServerTick(ServerTickEvent event) {
+        if (event.phase != Phase.END)
+            return;
+        if (JOURNAL != null) {
+            JOURNAL.flush();
+            if (JOURNAL.getSize() > ConfigGeneral.getInt("journal_compaction_size") * 1024L)
+                COORDINATOR.requestDurability();
+        }
+        if (STORAGE == null || !STORAGE.isDirty())
+            return;
+        if (STORAGE.isTransactional() || COORDINATOR.shouldWrite(System.currentTimeMillis(), ConfigGeneral.getInt("save_interval") * 1000L))
+            writeSnapshot(ConfigGeneral.getBool("async_save") && !stopping);
+    }
+
+    /**
+     * The modified datas are written when the overworld is saved, by the
+     * automatic saves or the command save-all.
+     */
+    @SubscribeEvent
+    public static void onWorldSave(WorldEvent.Save event) {
+        if (!event.getWorld().isRemote && event.getWorld().provider.getDimension() == 0)
+            COORDINATOR.requestDurability();
+    }
+
+    /**
+     * Writes the modified datas. The journal is rotated, its old segments are
+     * deleted once the snapshot is written.
+     */
+    private static void writeSnapshot(boolean async) {
+        if (STORAGE == null || async && STORAGE.isWriting())
+            return;
+        final Journal journal = JOURNAL;
+        if (journal != null) {
+            final int segment = journal.rotate();
+            STORAGE.flush(async, () -> journal.deleteUpTo(segment));
+        } else {
+            STORAGE.flush(async, null);
+        }
+        COORDINATOR.written(System.currentTimeMillis());
     }
 
     public static void load() {
         ServerUtils.getProfiler().startSection("loadFactionMod");
 
         if (DimensionManager.getWorlds().length > 0) {
+            DIRECTORY = new File(DimensionManager.getCurrentSaveRootDirectory(), "data" + File.separator + NAME);
+            STORAGE = createStorage(ConfigGeneral.getString("storage"));
+            COORDINATOR = new SaveCoordinator();
+            JOURNAL = new Journal(new File(DIRECTORY, "journal"));
             MapStorage storage = DimensionManager.getWorlds()[0].getMapStorage();
             FactionModDatas data = (FactionModDatas) storage.getOrLoadData(FactionModDatas.class, NAME);
             if (data == null) {
+                // The files and the journal can exist if the server crashed
+                // before the first save
                 data = new FactionModDatas(NAME);
+                final NBTTagCompound empty = new NBTTagCompound();
+                empty.setString("version", DATA_VERSION);
+                empty.setString("storage", STORAGE.getName());
+                data.readFromNBT(empty);
                 storage.setData(NAME, data);
             }
             SAVE = data;
+            if (migrated || STORAGE.isTransactional()) {
+                // The migrated datas and the records of the journal are
+                // written before anything else happens
+                writeSnapshot(false);
+                // The manifest has to name the new storage
+                if (migrated)
+                    SAVE.markDirty();
+                migrated = false;
+            }
+            if (STORAGE.isTransactional()) {
+                JOURNAL.close();
+                JOURNAL = null;
+            }
+            EventHandlerChunkData.restoreClaims();
+            if (STORAGE.isDirty())
+                SAVE.markDirty();
         }
 
         MinecraftForge.EVENT_BUS.post(new FactionsLoadedEvent());
@@ -56,75 +335,215 @@ public class FactionModDatas extends WorldSavedData {
         ServerUtils.getProfiler().endSection();
     }
 
+    /**
+     * Creates the storage with the given name.
+     * 
+     * @param name
+     *            The name of the storage, "files" or "database"
+     * @return the storage, the files are used if the database can't be opened
+     *         or if H2 isn't installed
+     */
+    private static IStorage createStorage(String name) {
+        if ("database".equals(name)) {
+            try {
+                return new DatabaseStorage(new File(DIRECTORY, "factions"));
+            } catch (SQLException e) {
+                FactionMod.getLogger().error("Couldn't open the database, the datas of the factions will be saved in files");
+                e.printStackTrace();
+            } catch (NoClassDefFoundError e) {
+                FactionMod.getLogger().error("H2 isn't installed, put h2-1.4.197.jar in the mods folder to use the database. The datas of the factions will be saved in files");
+            }
+        }
+        return new IncrementalStorage(DIRECTORY);
+    }
+
+    /**
+     * Writes all the modified datas, called when the server is stopping. The
+     * saves following this call are written on the server thread.
+     */
+    public static void flush() {
+        stopping = true;
+        writeSnapshot(false);
+    }
+
+    /**
+     * Waits for the last writes and releases the storage, called when the
+     * server stopped.
+     */
+    public static void close() {
+        if (STORAGE != null)
+            FactionMod.getLogger().info("Saved the factions : " + COORDINATOR);
+        if (JOURNAL != null) {
+            JOURNAL.close();
+            JOURNAL = null;
+        }
+        if (STORAGE != null) {
+            STORAGE.close();
+            STORAGE = null;
+        }
+        stopping = false;
+    }
+
     public FactionModDatas(String name) {
         super(name);
     }
 
     @Override
     public void readFromNBT(NBTTagCompound nbt) {
-        // Read factions first, it's necessary
-        NBTTagList factions = nbt.getTagList("factions", NBT.TAG_COMPOUND);
-        for(int i = 0; i < factions.tagCount(); i++) {
-            Faction faction = new Faction(factions.getCompoundTagAt(i));
-            EventHandlerFaction.addFaction(faction);
-            for(Member member : faction.getMembers()) {
-                EventHandlerFaction.addUserToFaction(faction, member.getUUID());
+        final String version = nbt.getString("version");
+        // The version 1 contains the factions and the claims
+        final boolean legacy = !DATA_VERSION.equals(version) && !"2".equals(version);
+        final HashSet<String> touched = new HashSet<String>();
+        List<Journal.ClaimRecord> claims = Collections.emptyList();
+        final long start = System.nanoTime();
+        final int claimsBefore = EventHandlerChunk.getManagedChunksCount();
+        List<Faction> loaded;
+        // The datas are read from the storage they were saved in, then
+        // written in the configured one
+        final String storedIn = nbt.hasKey("storage") ? nbt.getString("storage") : "files";
+        final IStorage source = legacy || storedIn.equals(STORAGE.getName()) ? STORAGE : createStorage(storedIn);
+        migrated = source != STORAGE;
+        loading = true;
+        try {
+            if (legacy) {
+                // Read factions first, it's necessary
+                NBTTagList factions = nbt.getTagList("factions", NBT.TAG_COMPOUND);
+                final ArrayList<NBTTagCompound> compounds = new ArrayList<NBTTagCompound>(factions.tagCount());
+                for(int i = 0; i < factions.tagCount(); i++) {
+                    compounds.add(factions.getCompoundTagAt(i));
+                }
+                loaded = readFactions(compounds);
+                EventHandlerFaction.loadFactions(loaded);
+                for(PackedClaims.Group group : PackedClaims.readList(nbt.getTagList("managers", NBT.TAG_COMPOUND))) {
+                    registerClaims(group);
+                }
+            } else {
+                final LinkedHashMap<String, NBTTagCompound> factions = new LinkedHashMap<String, NBTTagCompound>();
+                for(NBTTagCompound faction : source.readFactions()) {
+                    factions.put(faction.getString("name").toLowerCase(), faction);
+                }
+                claims = JOURNAL.replay(factions, touched);
+                loaded = readFactions(factions.values());
+                EventHandlerFaction.loadFactions(loaded);
+
+                final List<PackedClaims.Group> groups = source.readClaims();
+                reserveClaims(groups);
+                for(PackedClaims.Group group : groups) {
+                    registerClaims(group);
+                }
+                for(Journal.ClaimRecord claim : claims) {
+                    if (claim.getInstance() == null)
+                        EventHandlerChunk.unregisterChunkManager(claim.getPosition(), false);
+                    else
+                        registerClaim(claim.getPosition(), claim.getInstance());
+                }
             }
+        } finally {
+            loading = false;
+            if (migrated)
+                source.close();
         }
+        logLoading(loaded, EventHandlerChunk.getManagedChunksCount() - claimsBefore, System.nanoTime() - start);
+
+        if (!DATA_VERSION.equals(version)) {
+            FactionMod.getLogger().info("Migrating the datas of the version " + version + " to the version " + DATA_VERSION);
+            STORAGE.markAll();
+        } else if (migrated) {
+            FactionMod.getLogger().info("Migrating the datas from the storage \"" + storedIn + "\" to the storage \"" + STORAGE.getName() + "\"");
+            STORAGE.markAll();
+        }
+        // The modifications read from the journal aren't in the files yet
+        for(String name : touched) {
+            STORAGE.markFaction(name);
+        }
+        for(Journal.ClaimRecord claim : claims) {
+            STORAGE.markClaim(claim.getPosition());
+        }
+    }
 
-        HashMap<DimensionalPosition, ZoneInstance> instances = new HashMap<DimensionalPosition, ZoneInstance>();
-        NBTTagList managersList = nbt.getTagList("managers", NBT.TAG_COMPOUND);
-        for(int i = 0; i < managersList.tagCount(); i++) {
-            NBTTagCompound compound = managersList.getCompoundTagAt(i);
-            instances.put(new DimensionalPosition(compound.getCompoundTag("key")), new ZoneInstance(compound.getCompoundTag("value")));
-        }
-
-        for(Entry<DimensionalPosition, ZoneInstance> entry : instances.entrySet()) {
-            DimensionalPosition pos = entry.getKey();
-            ZoneInstance instance = entry.getValue();
-            final Zone zone = EventHandlerChunk.getZone(instance.getZoneName());
-            if (zone != null) {
-                IChunkManager manager;
-                if (zone.isStandAlone()) {
-                    manager = zone.getInstance();
-                } else {
-                    try {
-                        manager = zone.createInstance(instance.getArgs());
-                    } catch (Exception e) {
-                        String listArgs = "";
-                        for(String str : instance.getArgs()) {
-                            listArgs += str + " ";
-                        }
-                        FactionMod.getLogger().warn("Cannot instanciate the zone " + zone.getName() + " with args : " + listArgs);
-                        e.printStackTrace();
-                        continue;
-                    }
+    /**
+     * Decodes the factions in parallel, the items of their inventories are
+     * read when the inventories are used.
+     */
+    private static List<Faction> readFactions(Collection<NBTTagCompound> compounds) {
+        return compounds.parallelStream().map(Faction::new).collect(Collectors.toList());
+    }
+
+    /**
+     * Sizes the index of the claims for the given claims, so it isn't resized
+     * while they are registered.
+     */
+    private static void reserveClaims(List<PackedClaims.Group> groups) {
+        final HashMap<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        for(PackedClaims.Group group : groups) {
+            counts.merge(group.getDimension(), group.getKeys().length, Integer::sum);
+        }
+        for(Map.Entry<Integer, Integer> count : counts.entrySet()) {
+            EventHandlerChunk.ensureCapacity(count.getKey(), count.getValue());
+        }
+    }
+
+    private static void logLoading(List<Faction> factions, int claims, long nanos) {
+        int members = 0;
+        for(Faction faction : factions) {
+            members += faction.getMembers().size();
+        }
+        final long millis = Math.max(1L, nanos / 1000000L);
+        FactionMod.getLogger().info("Loaded " + factions.size() + " factions (" + members + " members) and " + claims + " claims in " + millis + " ms ("
+                + (factions.size() + claims) * 1000L / millis + " records/s)");
+    }
+
+    private static void registerClaim(DimensionalPosition pos, ZoneInstance instance) {
+        final Zone zone = EventHandlerChunk.getZone(instance.getZoneName());
+        if (zone != null) {
+            Pair<IChunkManager, ZoneInstance> pair;
+            try {
+                pair = zone.getSharedInstance(instance.getArgs());
+            } catch (Exception e) {
+                String listArgs = "";
+                for(String str : instance.getArgs()) {
+                    listArgs += str + " ";
                 }
-                EventHandlerChunk.registerChunkManager(manager, pos, instance, false);
-            } else {
-                FactionMod.getLogger().warn("Removed chunk manager at " + pos.toString() + " because the zone associated with it doens't exist.");
+                FactionMod.getLogger().warn("Cannot instanciate the zone " + zone.getName() + " with args : " + listArgs);
+                e.printStackTrace();
+                return;
+            }
+            EventHandlerChunk.registerChunkManager(pair.first(), pos, pair.second(), false);
+        } else {
+            FactionMod.getLogger().warn("Removed chunk manager at " + pos.toString() + " because the zone associated with it doens't exist.");
+        }
+    }
+
+    /**
+     * Registers a group of claims, the manager is instanciated once for the
+     * whole group.
+     */
+    private static void registerClaims(PackedClaims.Group group) {
+        final ZoneInstance instance = group.getInstance();
+        final int dimension = group.getDimension();
+        final long[] keys = group.getKeys();
+        final Zone zone = EventHandlerChunk.getZone(instance.getZoneName());
+        if (zone != null) {
+            Pair<IChunkManager, ZoneInstance> pair;
+            try {
+                pair = zone.getSharedInstance(instance.getArgs());
+            } catch (Exception e) {
+                FactionMod.getLogger().warn("Cannot instanciate the zone " + zone.getName() + " with args : " + String.join(" ", instance.getArgs()));
+                e.printStackTrace();
+                return;
             }
+            EventHandlerChunk.registerChunkManagers(pair.first(), pair.second(), dimension, keys);
+        } else {
+            FactionMod.getLogger().warn("Removed " + keys.length + " chunk managers in the dimension " + dimension + " because the zone " + instance.getZoneName() + " doesn't exist.");
         }
     }
 
     @Override
     public NBTTagCompound writeToNBT(NBTTagCompound nbt) {
         nbt.setString("version", DATA_VERSION);
-        NBTTagList managersList = new NBTTagList();
-        for(Entry<DimensionalPosition, ZoneInstance> entry : EventHandlerChunk.getZonesInstances().entrySet()) {
-            NBTTagCompound compound = new NBTTagCompound();
-            compound.setTag("key", entry.getKey().serializeNBT());
-            compound.setTag("value", entry.getValue().serializeNBT());
-            managersList.appendTag(compound);
-        }
-        nbt.setTag("managers", managersList);
-
-        NBTTagList factions = new NBTTagList();
-        for(Faction faction : EventHandlerFaction.getFactions().values()) {
-            factions.appendTag(faction.serializeNBT());
-        }
-        nbt.setTag("factions", factions);
-
+        if (STORAGE != null)
+            nbt.setString("storage", STORAGE.getName());
+        writeSnapshot(ConfigGeneral.getBool("async_save") && !stopping);
         return nbt;
     }
 
@@ -0,0 +1,114 @@
+package factionmod.data;
+
+import java.util.List;
+
+import factionmod.faction.Faction;
+import factionmod.utils.DimensionalPosition;
+import net.minecraft.nbt.NBTTagCompound;
+
+/**
+ * Where the factions and the claims are persisted. The storage is told which
+ * factions and which claims were modified, and writes them when
+ * {@link IStorage#flush(boolean, Runnable)} is called. The storage to use is
+ * selected in the configuration.
+ *
+ * @author BrokenSwing
+ *
+ */
+public interface IStorage {
+
+    /**
+     * Returns the name of the storage, as written in the configuration.
+     *
+     * @return the name
+     */
+    String getName();
+
+    /**
+     * Marks the faction with the given name as modified. If the faction doesn't
+     * exist anymore, it's removed from the storage at the next flush.
+     *
+     * @param name
+     *            The name of the faction
+     */
+    void markFaction(String name);
+
+    /**
+     * Marks the claim of the given chunk as modified. If the chunk isn't
+     * managed anymore, its claim is removed from the storage at the next
+     * flush.
+     *
+     * @param position
+     *            The position of the chunk
+     */
+    void markClaim(DimensionalPosition position);
+
+    /**
+     * Marks every faction and every claim as modified, the next flush writes
+     * all of them and deletes the records of the factions and the claims
+     * which aren't in memory. It's used to migrate the datas to this storage.
+     */
+    void markAll();
+
+    /**
+     * Indicates if something has to be written.
+     *
+     * @return true if a faction or a claim was modified
+     */
+    boolean isDirty();
+
+    /**
+     * Indicates if the storage writes each modification in a transaction. In
+     * this case it's flushed at the end of each tick and no {@link Journal} is
+     * kept.
+     *
+     * @return true if the storage is transactional
+     */
+    boolean isTransactional();
+
+    /**
+     * Writes the modified factions and claims. The modified records are always
+     * serialized on the calling thread, which must be the server thread.
+     *
+     * @param async
+     *            true to write them on a background thread
+     * @param onWritten
+     *            Called once every record is written, on the thread which
+     *            wrote them, can be null
+     * @return true if the records were written or submitted, false if the
+     *         previous write isn't finished
+     */
+    boolean flush(boolean async, Runnable onWritten);
+
+    /**
+     * Indicates if records are being written by the background thread.
+     *
+     * @return true if a write is in flight
+     */
+    boolean isWriting();
+
+    /**
+     * Waits for the write in flight to finish, if any.
+     */
+    void waitForWrites();
+
+    /**
+     * Waits for the write in flight and releases the storage.
+     */
+    void close();
+
+    /**
+     * Reads all the saved factions.
+     *
+     * @return the compounds of the factions, see {@link Faction#serializeNBT()}
+     */
+    List<NBTTagCompound> readFactions();
+
+    /**
+     * Reads all the saved claims.
+     *
+     * @return the claims grouped by dimension and instance
+     */
+    List<PackedClaims.Group> readClaims();
+
+}
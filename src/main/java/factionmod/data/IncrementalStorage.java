@@ -0,0 +1,331 @@
+package factionmod.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import factionmod.FactionMod;
+import factionmod.faction.Faction;
+import factionmod.handler.EventHandlerChunk;
+import factionmod.handler.EventHandlerFaction;
+import factionmod.manager.instanciation.ZoneInstance;
+import factionmod.utils.DimensionalPosition;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraftforge.common.util.Constants.NBT;
+
+/**
+ * The default {@link IStorage}, it saves the factions and the claims in many
+ * small files, one per faction and one per region of 32x32 chunks. Only the
+ * factions and the regions which changed since the last save are written.
+ *
+ * @author BrokenSwing
+ *
+ */
+public class IncrementalStorage extends AsyncStorage {
+
+    /** A region is a square of REGION_SIZE x REGION_SIZE chunks */
+    public static final int                    REGION_SHIFT   = 5;
+    public static final int                    REGION_SIZE    = 1 << REGION_SHIFT;
+
+    private final File                         factionsDirectory;
+    private final File                         claimsDirectory;
+
+    /** Lowercase names of the factions to write or delete */
+    private final HashSet<String>              dirtyFactions  = new HashSet<String>();
+    /** The regions to write or delete, stored as positions of regions */
+    private final HashSet<DimensionalPosition> dirtyRegions   = new HashSet<DimensionalPosition>();
+    /** The files of factions which don't exist anymore, to delete */
+    private final HashSet<File>                staleFiles     = new HashSet<File>();
+
+    /** The records the background thread couldn't write */
+    private final Queue<String>                failedFactions = new ConcurrentLinkedQueue<String>();
+    private final Queue<DimensionalPosition>   failedRegions  = new ConcurrentLinkedQueue<DimensionalPosition>();
+    private final Queue<File>                  failedFiles    = new ConcurrentLinkedQueue<File>();
+
+    public IncrementalStorage(File directory) {
+        this.factionsDirectory = new File(directory, "factions");
+        this.claimsDirectory = new File(directory, "claims");
+    }
+
+    @Override
+    public String getName() {
+        return "files";
+    }
+
+    @Override
+    public void markFaction(String name) {
+        this.dirtyFactions.add(name.toLowerCase());
+    }
+
+    /**
+     * Marks the region containing the given chunk as modified.
+     */
+    @Override
+    public void markClaim(DimensionalPosition position) {
+        this.dirtyRegions.add(regionOf(position.getDimension(), position.getPos().x, position.getPos().z));
+    }
+
+    /**
+     * Marks every faction and every region containing a claim as modified.
+     * The files of the factions and the regions which aren't in memory are
+     * deleted, they may have been written before the datas were saved in an
+     * other storage.
+     */
+    @Override
+    public void markAll() {
+        final HashSet<String> liveFiles = new HashSet<String>();
+        for(Faction faction : EventHandlerFaction.getFactions().values()) {
+            this.markFaction(faction.getName());
+            liveFiles.add(this.getFactionFile(faction.getName().toLowerCase()).getName());
+        }
+        EventHandlerChunk.forEachZoneInstance((dim, x, z, instance) -> this.dirtyRegions.add(regionOf(dim, x, z)));
+
+        final File[] factionFiles = this.factionsDirectory.listFiles((dir, name) -> name.endsWith(".dat"));
+        if (factionFiles != null) {
+            for(File file : factionFiles) {
+                if (!liveFiles.contains(file.getName()))
+                    this.staleFiles.add(file);
+            }
+        }
+        // The regions without claims are deleted when they are written
+        final File[] regionFiles = this.claimsDirectory.listFiles((dir, name) -> name.endsWith(".dat"));
+        if (regionFiles != null) {
+            for(File file : regionFiles) {
+                final DimensionalPosition region = parseRegion(file.getName());
+                if (region != null)
+                    this.dirtyRegions.add(region);
+                else
+                    FactionMod.getLogger().warn("Unexpected file " + file.getAbsolutePath() + " in the directory of the claims");
+            }
+        }
+    }
+
+    @Override
+    public boolean isDirty() {
+        return !this.dirtyFactions.isEmpty() || !this.dirtyRegions.isEmpty() || !this.staleFiles.isEmpty() || !this.failedFactions.isEmpty() || !this.failedRegions.isEmpty()
+                || !this.failedFiles.isEmpty();
+    }
+
+    @Override
+    public boolean isTransactional() {
+        return false;
+    }
+
+    private static DimensionalPosition regionOf(int dimension, int chunkX, int chunkZ) {
+        return new DimensionalPosition(new ChunkPos(chunkX >> REGION_SHIFT, chunkZ >> REGION_SHIFT), dimension);
+    }
+
+    private File getFactionFile(String lowerName) {
+        return new File(this.factionsDirectory, UUID.nameUUIDFromBytes(lowerName.getBytes(StandardCharsets.UTF_8)).toString() + ".dat");
+    }
+
+    private File getRegionFile(DimensionalPosition region) {
+        return new File(this.claimsDirectory, region.getDimension() + "_" + region.getPos().x + "_" + region.getPos().z + ".dat");
+    }
+
+    /**
+     * Reads the position of a region from the name of its file.
+     * 
+     * @return the position of the region or null if the name isn't valid
+     */
+    private static DimensionalPosition parseRegion(String fileName) {
+        final String[] parts = fileName.substring(0, fileName.length() - ".dat".length()).split("_");
+        if (parts.length != 3)
+            return null;
+        try {
+            return new DimensionalPosition(new ChunkPos(Integer.parseInt(parts[1]), Integer.parseInt(parts[2])), Integer.parseInt(parts[0]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Serializes the modified factions and regions. The files of the factions
+     * which were removed and of the regions which don't contain any claim
+     * anymore are deleted. The files which couldn't be written stay modified,
+     * they will be written again at the next flush.
+     */
+    @Override
+    protected BooleanSupplier snapshot() {
+        String failedFaction;
+        while ((failedFaction = this.failedFactions.poll()) != null) {
+            this.dirtyFactions.add(failedFaction);
+        }
+        DimensionalPosition failedRegion;
+        while ((failedRegion = this.failedRegions.poll()) != null) {
+            this.dirtyRegions.add(failedRegion);
+        }
+        File failedFile;
+        while ((failedFile = this.failedFiles.poll()) != null) {
+            this.staleFiles.add(failedFile);
+        }
+
+        final ArrayList<PendingWrite> writes = new ArrayList<PendingWrite>(this.dirtyFactions.size() + this.dirtyRegions.size() + this.staleFiles.size());
+        for(String name : this.dirtyFactions) {
+            final Faction faction = EventHandlerFaction.getFaction(name);
+            writes.add(new PendingWrite(name, null, this.getFactionFile(name), faction == null ? null : faction.serializeNBT()));
+        }
+        this.dirtyFactions.clear();
+
+        for(DimensionalPosition region : this.dirtyRegions) {
+            writes.add(new PendingWrite(null, region, this.getRegionFile(region), writeRegion(region)));
+        }
+        this.dirtyRegions.clear();
+
+        for(File file : this.staleFiles) {
+            writes.add(new PendingWrite(null, null, file, null));
+        }
+        this.staleFiles.clear();
+        return () -> this.apply(writes);
+    }
+
+    /**
+     * Writes or deletes the files, can be called from any thread.
+     * 
+     * @return true if all the files were written
+     */
+    private boolean apply(List<PendingWrite> writes) {
+        if (writes.isEmpty())
+            return true;
+        this.factionsDirectory.mkdirs();
+        this.claimsDirectory.mkdirs();
+
+        int written = 0;
+        for(PendingWrite write : writes) {
+            if (write.nbt == null ? delete(write.file) : write(write.nbt, write.file)) {
+                written++;
+            } else if (write.faction != null) {
+                this.failedFactions.add(write.faction);
+            } else if (write.region != null) {
+                this.failedRegions.add(write.region);
+            } else {
+                this.failedFiles.add(write.file);
+            }
+        }
+
+        FactionMod.getLogger().debug("Saved " + written + "/" + writes.size() + " modified faction and claim files");
+        return written == writes.size();
+    }
+
+    /**
+     * Serializes the claims of a region in the packed format.
+     * 
+     * @return the compound of the region or null if it doesn't contain any
+     *         claim
+     */
+    private static NBTTagCompound writeRegion(DimensionalPosition region) {
+        final PackedClaims.Grouper grouper = new PackedClaims.Grouper();
+        final int dimension = region.getDimension();
+        final int minX = region.getPos().x << REGION_SHIFT;
+        final int minZ = region.getPos().z << REGION_SHIFT;
+        for(int x = minX; x < minX + REGION_SIZE; x++) {
+            for(int z = minZ; z < minZ + REGION_SIZE; z++) {
+                final ZoneInstance instance = EventHandlerChunk.getZoneInstance(dimension, x, z);
+                if (instance != null)
+                    grouper.add(instance, x, z);
+            }
+        }
+        return grouper.isEmpty() ? null : PackedClaims.write(dimension, grouper.getGroups());
+    }
+
+    @Override
+    public List<NBTTagCompound> readFactions() {
+        return readAll(this.factionsDirectory);
+    }
+
+    /**
+     * Reads the files of the regions and decodes their claims in parallel. The
+     * regions written by the version 2 of the datas contain a list of claims
+     * named "managers" instead of the packed claims.
+     */
+    @Override
+    public List<PackedClaims.Group> readClaims() {
+        return readAll(this.claimsDirectory).parallelStream().flatMap(region -> {
+            if (PackedClaims.isPacked(region))
+                return PackedClaims.read(region).stream();
+            return PackedClaims.readList(region.getTagList("managers", NBT.TAG_COMPOUND)).stream();
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * Reads the files of the directory in parallel, each file is decompressed
+     * and parsed by a thread of the common fork-join pool.
+     */
+    private static List<NBTTagCompound> readAll(File directory) {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(".dat"));
+        if (files == null)
+            return new ArrayList<NBTTagCompound>();
+        return Arrays.stream(files).parallel().map(IncrementalStorage::read).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    private static NBTTagCompound read(File file) {
+        try (InputStream input = new FileInputStream(file)) {
+            return CompressedStreamTools.readCompressed(input);
+        } catch (IOException e) {
+            FactionMod.getLogger().warn("Couldn't read the file " + file.getAbsolutePath());
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static boolean write(NBTTagCompound nbt, File file) {
+        final File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (OutputStream output = new FileOutputStream(temp)) {
+                CompressedStreamTools.writeCompressed(nbt, output);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            FactionMod.getLogger().warn("Couldn't write the file " + file.getAbsolutePath());
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean delete(File file) {
+        if (file.exists() && !file.delete()) {
+            FactionMod.getLogger().warn("Couldn't delete the file " + file.getAbsolutePath());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * A file to write, or to delete if there's no compound.
+     */
+    private static final class PendingWrite {
+
+        private final String              faction;
+        private final DimensionalPosition region;
+        private final File                file;
+        private final NBTTagCompound      nbt;
+
+        private PendingWrite(String faction, DimensionalPosition region, File file, NBTTagCompound nbt) {
+            this.faction = faction;
+            this.region = region;
+            this.file = file;
+            this.nbt = nbt;
+        }
+
+    }
+
+}
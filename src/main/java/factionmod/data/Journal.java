@@ -0,0 +1,536 @@
+package factionmod.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+
+import factionmod.FactionMod;
+import factionmod.faction.Faction;
+import factionmod.faction.Member;
+import factionmod.handler.EventHandlerFaction;
+import factionmod.manager.instanciation.ZoneInstance;
+import factionmod.utils.DimensionalBlockPos;
+import factionmod.utils.DimensionalPosition;
+import net.minecraft.nbt.CompressedStreamTools;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTUtil;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraftforge.common.util.Constants.NBT;
+
+/**
+ * An append-only log of the modifications of the factions and the claims. The
+ * records are replayed on top of the datas read from the {@link IStorage} when
+ * the server starts, so a crash doesn't lose the modifications made since
+ * the last save.
+ * <p>
+ * The journal is split in segments. When a snapshot of the modified datas is
+ * taken, a new segment is started and the previous ones are deleted once the
+ * snapshot is written. Every record sets an absolute value, replaying a record
+ * which is already in the snapshot doesn't change anything.
+ * <p>
+ * The frequent modifications of a faction, like its claims, its members or
+ * its experience, have their own small records. The whole faction is written
+ * only for the rare modifications, like its grades, its home or its
+ * description.
+ *
+ * @author BrokenSwing
+ *
+ */
+public class Journal {
+
+    private static final byte              RECORD_FACTION    = 1;
+    private static final byte              RECORD_DISBAND    = 2;
+    private static final byte              RECORD_EXPERIENCE = 3;
+    private static final byte              RECORD_DAMAGES    = 4;
+    private static final byte              RECORD_INVENTORY  = 5;
+    private static final byte              RECORD_CLAIM      = 6;
+    private static final byte              RECORD_UNCLAIM    = 7;
+    private static final byte              RECORD_ADD_CHUNK  = 8;
+    private static final byte              RECORD_DEL_CHUNK  = 9;
+    private static final byte              RECORD_JOIN       = 10;
+    private static final byte              RECORD_LEAVE      = 11;
+
+    /** The whole faction changed */
+    public static final int                CHANGE_ALL        = 1;
+    /** The level, the experience or the experience of a member changed */
+    public static final int                CHANGE_EXPERIENCE = 2;
+    /** The damages changed */
+    public static final int                CHANGE_DAMAGES    = 4;
+    /** The content of the inventory changed */
+    public static final int                CHANGE_INVENTORY  = 8;
+
+    private static final String            PREFIX            = "journal-";
+    private static final String            SUFFIX            = ".bin";
+
+    private final File                     directory;
+    private int                            segment;
+    private DataOutputStream               output            = null;
+    /** The changes of each faction, written once per tick */
+    private final HashMap<String, Integer> pending           = new HashMap<String, Integer>();
+
+    public Journal(File directory) {
+        this.directory = directory;
+        int last = -1;
+        for(int index : this.getSegments()) {
+            last = Math.max(last, index);
+        }
+        this.segment = last + 1;
+    }
+
+    private File getSegmentFile(int index) {
+        return new File(this.directory, PREFIX + index + SUFFIX);
+    }
+
+    private int[] getSegments() {
+        final File[] files = this.directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null)
+            return new int[0];
+        final int[] segments = new int[files.length];
+        int count = 0;
+        for(File file : files) {
+            try {
+                segments[count] = Integer.parseInt(file.getName().substring(PREFIX.length(), file.getName().length() - SUFFIX.length()));
+                count++;
+            } catch (NumberFormatException e) {}
+        }
+        final int[] sorted = Arrays.copyOf(segments, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private DataOutputStream getOutput() throws IOException {
+        if (this.output == null) {
+            this.directory.mkdirs();
+            this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.getSegmentFile(this.segment), true)));
+        }
+        return this.output;
+    }
+
+    /**
+     * Records a modification of a faction. The record is written at the end
+     * of the tick.
+     *
+     * @param name
+     *            The name of the faction
+     * @param change
+     *            What changed, one of the CHANGE_ constants
+     */
+    public void logFaction(String name, int change) {
+        this.pending.merge(name.toLowerCase(), change, (a, b) -> a | b);
+    }
+
+    /**
+     * Records the claim or the unclaim of a chunk.
+     *
+     * @param dimension
+     *            The dimension of the chunk
+     * @param x
+     *            The x coordinate of the chunk
+     * @param z
+     *            The z coordinate of the chunk
+     * @param instance
+     *            The instance of the new manager of the chunk, null if the
+     *            chunk isn't managed anymore
+     */
+    public void logClaim(int dimension, int x, int z, ZoneInstance instance) {
+        try {
+            final DataOutputStream out = this.getOutput();
+            out.writeByte(instance == null ? RECORD_UNCLAIM : RECORD_CLAIM);
+            out.writeInt(dimension);
+            out.writeInt(x);
+            out.writeInt(z);
+            if (instance != null) {
+                out.writeUTF(instance.getZoneName());
+                out.writeShort(instance.getArgs().length);
+                for(String arg : instance.getArgs()) {
+                    out.writeUTF(arg);
+                }
+            }
+        } catch (IOException e) {
+            this.fail(e);
+        }
+    }
+
+    /**
+     * Records a chunk added to or removed from the chunks of a faction.
+     *
+     * @param name
+     *            The name of the faction
+     * @param position
+     *            The position of the chunk
+     * @param claimed
+     *            true if the chunk was added, false if it was removed
+     */
+    public void logFactionChunk(String name, DimensionalPosition position, boolean claimed) {
+        try {
+            final DataOutputStream out = this.getOutput();
+            out.writeByte(claimed ? RECORD_ADD_CHUNK : RECORD_DEL_CHUNK);
+            out.writeUTF(name.toLowerCase());
+            out.writeInt(position.getDimension());
+            out.writeInt(position.getPos().x);
+            out.writeInt(position.getPos().z);
+        } catch (IOException e) {
+            this.fail(e);
+        }
+    }
+
+    /**
+     * Records a member joining or leaving a faction.
+     *
+     * @param name
+     *            The name of the faction
+     * @param member
+     *            The member
+     * @param joined
+     *            true if the member joined the faction, false if he left it
+     */
+    public void logMember(String name, Member member, boolean joined) {
+        try {
+            final DataOutputStream out = this.getOutput();
+            out.writeByte(joined ? RECORD_JOIN : RECORD_LEAVE);
+            out.writeUTF(name.toLowerCase());
+            out.writeLong(member.getUUID().getMostSignificantBits());
+            out.writeLong(member.getUUID().getLeastSignificantBits());
+            if (joined) {
+                out.writeUTF(member.getGrade().getName());
+                out.writeInt(member.getExperience());
+            }
+        } catch (IOException e) {
+            this.fail(e);
+        }
+    }
+
+    /**
+     * Writes the pending records of the factions and hands everything to the
+     * operating system.
+     */
+    public void flush() {
+        if (this.pending.isEmpty() && this.output == null)
+            return;
+        try {
+            final DataOutputStream out = this.getOutput();
+            for(Entry<String, Integer> entry : this.pending.entrySet()) {
+                writeFaction(out, entry.getKey(), entry.getValue());
+            }
+            this.pending.clear();
+            out.flush();
+        } catch (IOException e) {
+            this.fail(e);
+        }
+    }
+
+    private static void writeFaction(DataOutputStream out, String name, int changes) throws IOException {
+        final Faction faction = EventHandlerFaction.getFaction(name);
+        if (faction == null) {
+            out.writeByte(RECORD_DISBAND);
+            out.writeUTF(name);
+            return;
+        }
+        if ((changes & CHANGE_ALL) != 0) {
+            out.writeByte(RECORD_FACTION);
+            out.writeUTF(name);
+            CompressedStreamTools.write(faction.serializeNBT(), out);
+            return;
+        }
+        if ((changes & CHANGE_EXPERIENCE) != 0) {
+            out.writeByte(RECORD_EXPERIENCE);
+            out.writeUTF(name);
+            out.writeInt(faction.getLevel());
+            out.writeInt(faction.getExp());
+            out.writeShort(faction.getMembers().size());
+            for(Member member : faction.getMembers()) {
+                out.writeLong(member.getUUID().getMostSignificantBits());
+                out.writeLong(member.getUUID().getLeastSignificantBits());
+                out.writeInt(member.getExperience());
+            }
+        }
+        if ((changes & CHANGE_DAMAGES) != 0) {
+            out.writeByte(RECORD_DAMAGES);
+            out.writeUTF(name);
+            out.writeInt(faction.getDamages());
+        }
+        if ((changes & CHANGE_INVENTORY) != 0) {
+            out.writeByte(RECORD_INVENTORY);
+            out.writeUTF(name);
+            CompressedStreamTools.write(faction.getInventory().serializeNBT(), out);
+        }
+    }
+
+    private void fail(IOException e) {
+        FactionMod.getLogger().error("Couldn't write in the journal of the factions");
+        e.printStackTrace();
+        this.closeOutput();
+    }
+
+    private void closeOutput() {
+        if (this.output != null) {
+            try {
+                this.output.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            this.output = null;
+        }
+    }
+
+    /**
+     * Returns the size of the current segment.
+     *
+     * @return the amount of bytes written in the current segment
+     */
+    public int getSize() {
+        return this.output == null ? 0 : this.output.size();
+    }
+
+    /**
+     * Closes the current segment and starts a new one. The records written
+     * before this call are in the returned segment or in the previous ones.
+     *
+     * @return the index of the closed segment
+     */
+    public int rotate() {
+        this.flush();
+        this.closeOutput();
+        return this.segment++;
+    }
+
+    /**
+     * Deletes the given segment and all the previous ones. Can be called from
+     * any thread.
+     *
+     * @param last
+     *            The index of the last segment to delete
+     */
+    public void deleteUpTo(int last) {
+        for(int index : this.getSegments()) {
+            if (index <= last && !this.getSegmentFile(index).delete())
+                FactionMod.getLogger().warn("Couldn't delete the segment " + index + " of the journal");
+        }
+    }
+
+    /**
+     * Writes the pending records and closes the journal.
+     */
+    public void close() {
+        this.flush();
+        this.closeOutput();
+    }
+
+    /**
+     * Applies the records of the factions on the given compounds, and returns
+     * the records of the claims. The claims must be applied after the
+     * factions are loaded.
+     *
+     * @param factions
+     *            The compound of each faction, by lowercase name
+     * @param touched
+     *            Filled with the names of the factions modified by the journal
+     * @return the records of the claims, in the order they were written
+     */
+    public List<ClaimRecord> replay(Map<String, NBTTagCompound> factions, Set<String> touched) {
+        final ArrayList<ClaimRecord> claims = new ArrayList<ClaimRecord>();
+        int records = 0;
+        for(int index : this.getSegments()) {
+            if (index >= this.segment)
+                continue;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.getSegmentFile(index))))) {
+                int type;
+                while ((type = in.read()) != -1) {
+                    readRecord(in, type, factions, touched, claims);
+                    records++;
+                }
+            } catch (EOFException e) {
+                FactionMod.getLogger().warn("The segment " + index + " of the journal ends with an incomplete record, it has been ignored");
+            } catch (IOException e) {
+                FactionMod.getLogger().error("Couldn't read the segment " + index + " of the journal");
+                e.printStackTrace();
+            }
+        }
+        if (records > 0)
+            FactionMod.getLogger().info("Replayed " + records + " records of the journal");
+        return claims;
+    }
+
+    private static void readRecord(DataInputStream in, int type, Map<String, NBTTagCompound> factions, Set<String> touched, List<ClaimRecord> claims) throws IOException {
+        if (type == RECORD_CLAIM || type == RECORD_UNCLAIM) {
+            final int dimension = in.readInt();
+            final int x = in.readInt();
+            final int z = in.readInt();
+            final DimensionalPosition position = new DimensionalPosition(new ChunkPos(x, z), dimension);
+            final ZoneInstance instance;
+            if (type == RECORD_CLAIM) {
+                final String zoneName = in.readUTF();
+                final String[] args = new String[in.readUnsignedShort()];
+                for(int i = 0; i < args.length; i++) {
+                    args[i] = in.readUTF();
+                }
+                instance = new ZoneInstance(zoneName, args);
+            } else {
+                instance = null;
+            }
+            claims.add(new ClaimRecord(position, instance));
+            return;
+        }
+
+        final String name = in.readUTF();
+        final NBTTagCompound faction = factions.get(name);
+        touched.add(name);
+        switch (type) {
+            case RECORD_FACTION:
+                factions.put(name, CompressedStreamTools.read(in));
+                break;
+            case RECORD_DISBAND:
+                factions.remove(name);
+                break;
+            case RECORD_EXPERIENCE:
+                final int level = in.readInt();
+                final int exp = in.readInt();
+                final int count = in.readUnsignedShort();
+                final long[] most = new long[count];
+                final long[] least = new long[count];
+                final int[] values = new int[count];
+                for(int i = 0; i < count; i++) {
+                    most[i] = in.readLong();
+                    least[i] = in.readLong();
+                    values[i] = in.readInt();
+                }
+                if (faction != null) {
+                    faction.setInteger("level", level);
+                    faction.setInteger("exp", exp);
+                    final NBTTagList members = faction.getTagList("members", NBT.TAG_COMPOUND);
+                    for(int i = 0; i < members.tagCount(); i++) {
+                        final NBTTagCompound member = members.getCompoundTagAt(i);
+                        for(int j = 0; j < count; j++) {
+                            if (member.getLong("uuidMost") == most[j] && member.getLong("uuidLeast") == least[j])
+                                member.setInteger("experience", values[j]);
+                        }
+                    }
+                }
+                break;
+            case RECORD_DAMAGES:
+                final int damages = in.readInt();
+                if (faction != null)
+                    faction.setInteger("damages", damages);
+                break;
+            case RECORD_INVENTORY:
+                final NBTTagCompound inventory = CompressedStreamTools.read(in);
+                if (faction != null)
+                    faction.setTag("inventory", inventory);
+                break;
+            case RECORD_ADD_CHUNK:
+            case RECORD_DEL_CHUNK:
+                final int chunkDimension = in.readInt();
+                final int chunkX = in.readInt();
+                final int chunkZ = in.readInt();
+                final DimensionalPosition position = new DimensionalPosition(new ChunkPos(chunkX, chunkZ), chunkDimension);
+                if (faction != null)
+                    replayChunk(faction, position, type == RECORD_ADD_CHUNK);
+                break;
+            case RECORD_JOIN:
+            case RECORD_LEAVE:
+                final UUID uuid = new UUID(in.readLong(), in.readLong());
+                final NBTTagCompound member = new NBTTagCompound();
+                member.setUniqueId("uuid", uuid);
+                if (type == RECORD_JOIN) {
+                    member.setString("grade", in.readUTF());
+                    member.setInteger("experience", in.readInt());
+                }
+                if (faction != null)
+                    replayMember(faction, uuid, type == RECORD_JOIN ? member : null);
+                break;
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    /**
+     * Adds the chunk to the chunks of the faction or removes it, the home is
+     * removed with the chunk containing it.
+     */
+    private static void replayChunk(NBTTagCompound faction, DimensionalPosition position, boolean claimed) {
+        final NBTTagList chunks = faction.getTagList("chunks", NBT.TAG_COMPOUND);
+        for(int i = 0; i < chunks.tagCount(); i++) {
+            if (new DimensionalPosition(chunks.getCompoundTagAt(i)).equals(position)) {
+                if (claimed)
+                    return;
+                chunks.removeTag(i);
+                break;
+            }
+        }
+        if (claimed) {
+            chunks.appendTag(position.serializeNBT());
+        } else if (faction.hasKey("home") && new DimensionalBlockPos(faction.getCompoundTag("home")).toDimensionnalPosition().equals(position)) {
+            faction.removeTag("home");
+        }
+        faction.setTag("chunks", chunks);
+    }
+
+    /**
+     * Replaces or removes the member with the given UUID, a member joining
+     * the faction isn't invited anymore.
+     *
+     * @param member
+     *            The compound of the member who joined, null if he left
+     */
+    private static void replayMember(NBTTagCompound faction, UUID uuid, NBTTagCompound member) {
+        final NBTTagList members = faction.getTagList("members", NBT.TAG_COMPOUND);
+        for(int i = members.tagCount() - 1; i >= 0; i--) {
+            if (uuid.equals(members.getCompoundTagAt(i).getUniqueId("uuid")))
+                members.removeTag(i);
+        }
+        if (member != null) {
+            members.appendTag(member);
+            final NBTTagList invitations = faction.getTagList("invitations", NBT.TAG_COMPOUND);
+            for(int i = invitations.tagCount() - 1; i >= 0; i--) {
+                if (uuid.equals(NBTUtil.getUUIDFromTag(invitations.getCompoundTagAt(i))))
+                    invitations.removeTag(i);
+            }
+            faction.setTag("invitations", invitations);
+        }
+        faction.setTag("members", members);
+    }
+
+    /**
+     * A claim or an unclaim read from the journal.
+     */
+    public static final class ClaimRecord {
+
+        private final DimensionalPosition position;
+        private final ZoneInstance        instance;
+
+        private ClaimRecord(DimensionalPosition position, ZoneInstance instance) {
+            this.position = position;
+            this.instance = instance;
+        }
+
+        public DimensionalPosition getPosition() {
+            return this.position;
+        }
+
+        /**
+         * Returns the instance of the manager of the chunk.
+         *
+         * @return the instance or null if the chunk was unclaimed
+         */
+        public ZoneInstance getInstance() {
+            return this.instance;
+        }
+
+    }
+
+}
@@ -0,0 +1,289 @@
+package factionmod.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import factionmod.manager.instanciation.ZoneInstance;
+import factionmod.utils.ChunkMap;
+import factionmod.utils.DimensionalPosition;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.nbt.NBTTagList;
+import net.minecraft.nbt.NBTTagString;
+import net.minecraftforge.common.util.Constants.NBT;
+
+/**
+ * The packed format of the claims of a region. The claims are grouped by
+ * {@link ZoneInstance} : the name of the zone and its arguments are written
+ * once per group, followed by the chunks of the group. The chunks are stored
+ * as their keys (see {@link ChunkMap#key(int, int)}), sorted and
+ * delta-encoded as variable length integers, so a row of claimed chunks
+ * costs about one byte per chunk.
+ *
+ * <pre>
+ * {
+ *     dim: int,
+ *     groups: [
+ *         { name: string, args: [string], count: int, chunks: byte[] }
+ *     ]
+ * }
+ * </pre>
+ *
+ * @author BrokenSwing
+ *
+ */
+public class PackedClaims {
+
+    /**
+     * Writes the claims of a region in the packed format.
+     *
+     * @param dimension
+     *            The dimension of the region
+     * @param groups
+     *            The keys of the claimed chunks of each instance, the arrays
+     *            are sorted by this method
+     * @return the compound of the region
+     */
+    public static NBTTagCompound write(int dimension, Map<ZoneInstance, long[]> groups) {
+        final NBTTagList groupsList = new NBTTagList();
+        for(Map.Entry<ZoneInstance, long[]> entry : groups.entrySet()) {
+            final long[] keys = entry.getValue();
+            Arrays.sort(keys);
+            final NBTTagCompound group = new NBTTagCompound();
+            group.setString("name", entry.getKey().getZoneName());
+            final NBTTagList argsList = new NBTTagList();
+            for(String arg : entry.getKey().getArgs()) {
+                argsList.appendTag(new NBTTagString(arg));
+            }
+            group.setTag("args", argsList);
+            group.setInteger("count", keys.length);
+            group.setByteArray("chunks", encode(keys));
+            groupsList.appendTag(group);
+        }
+        final NBTTagCompound nbt = new NBTTagCompound();
+        nbt.setInteger("dim", dimension);
+        nbt.setTag("groups", groupsList);
+        return nbt;
+    }
+
+    /**
+     * Indicates if the compound of a region uses the packed format.
+     *
+     * @param nbt
+     *            The compound of the region
+     * @return true if the claims are packed, false if the compound contains the
+     *         list of claims of the version 2 of the datas
+     */
+    public static boolean isPacked(NBTTagCompound nbt) {
+        return nbt.hasKey("groups", NBT.TAG_LIST);
+    }
+
+    /**
+     * Decodes the claims of a region written in the packed format. It doesn't
+     * instanciate any manager, it can be called from any thread.
+     *
+     * @param nbt
+     *            The compound of the region
+     * @return the groups of claims
+     */
+    public static List<Group> read(NBTTagCompound nbt) {
+        final int dimension = nbt.getInteger("dim");
+        final NBTTagList groupsList = nbt.getTagList("groups", NBT.TAG_COMPOUND);
+        final ArrayList<Group> groups = new ArrayList<Group>(groupsList.tagCount());
+        for(int i = 0; i < groupsList.tagCount(); i++) {
+            final NBTTagCompound group = groupsList.getCompoundTagAt(i);
+            final NBTTagList argsList = group.getTagList("args", NBT.TAG_STRING);
+            final String[] args = new String[argsList.tagCount()];
+            for(int j = 0; j < args.length; j++) {
+                args[j] = argsList.getStringTagAt(j);
+            }
+            final long[] keys = decode(group.getByteArray("chunks"), group.getInteger("count"));
+            groups.add(new Group(dimension, new ZoneInstance(group.getString("name"), args), keys));
+        }
+        return groups;
+    }
+
+    /**
+     * Decodes and groups a list of claims written by the versions 1 and 2 of
+     * the datas, each one containing a "key" and a "value" compound. It can be
+     * called from any thread.
+     *
+     * @param managersList
+     *            The list of claims
+     * @return the groups of claims
+     */
+    public static List<Group> readList(NBTTagList managersList) {
+        final GroupsBuilder builder = new GroupsBuilder();
+        for(int i = 0; i < managersList.tagCount(); i++) {
+            final NBTTagCompound compound = managersList.getCompoundTagAt(i);
+            final DimensionalPosition position = new DimensionalPosition(compound.getCompoundTag("key"));
+            builder.add(position.getDimension(), position.getPos().x, position.getPos().z, new ZoneInstance(compound.getCompoundTag("value")));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Groups claims read one by one. The instances are compared by zone name
+     * and arguments.
+     */
+    public static class GroupsBuilder {
+
+        private final HashMap<List<String>, ZoneInstance> instances  = new HashMap<List<String>, ZoneInstance>();
+        private final HashMap<Integer, Grouper>           dimensions = new HashMap<Integer, Grouper>();
+
+        /**
+         * Adds a claim.
+         *
+         * @param dimension
+         *            The dimension of the chunk
+         * @param x
+         *            The x coordinate of the chunk
+         * @param z
+         *            The z coordinate of the chunk
+         * @param read
+         *            The instance of the manager of the chunk
+         */
+        public void add(int dimension, int x, int z, ZoneInstance read) {
+            final ArrayList<String> key = new ArrayList<String>(read.getArgs().length + 1);
+            key.add(read.getZoneName());
+            key.addAll(Arrays.asList(read.getArgs()));
+            final ZoneInstance instance = this.instances.computeIfAbsent(key, k -> read);
+            this.dimensions.computeIfAbsent(dimension, dim -> new Grouper()).add(instance, x, z);
+        }
+
+        public List<Group> build() {
+            final ArrayList<Group> groups = new ArrayList<Group>();
+            for(Map.Entry<Integer, Grouper> dimension : this.dimensions.entrySet()) {
+                for(Map.Entry<ZoneInstance, long[]> group : dimension.getValue().getGroups().entrySet()) {
+                    groups.add(new Group(dimension.getKey(), group.getKey(), group.getValue()));
+                }
+            }
+            return groups;
+        }
+
+    }
+
+    /**
+     * Chunks of a dimension managed by the same instance.
+     */
+    public static final class Group {
+
+        private final int          dimension;
+        private final ZoneInstance instance;
+        private final long[]       keys;
+
+        private Group(int dimension, ZoneInstance instance, long[] keys) {
+            this.dimension = dimension;
+            this.instance = instance;
+            this.keys = keys;
+        }
+
+        public int getDimension() {
+            return this.dimension;
+        }
+
+        public ZoneInstance getInstance() {
+            return this.instance;
+        }
+
+        /**
+         * Returns the keys of the chunks, see {@link ChunkMap#key(int, int)}.
+         *
+         * @return the keys
+         */
+        public long[] getKeys() {
+            return this.keys;
+        }
+
+    }
+
+    /**
+     * Groups the keys of chunks by instance, the instances are compared by
+     * identity because the instances of the managers are shared.
+     */
+    public static class Grouper {
+
+        private final IdentityHashMap<ZoneInstance, long[]> keys  = new IdentityHashMap<ZoneInstance, long[]>();
+        private final IdentityHashMap<ZoneInstance, int[]>  sizes = new IdentityHashMap<ZoneInstance, int[]>();
+
+        public void add(ZoneInstance instance, int x, int z) {
+            long[] array = this.keys.get(instance);
+            int[] size = this.sizes.get(instance);
+            if (array == null) {
+                array = new long[16];
+                size = new int[1];
+                this.keys.put(instance, array);
+                this.sizes.put(instance, size);
+            } else if (size[0] == array.length) {
+                array = Arrays.copyOf(array, array.length * 2);
+                this.keys.put(instance, array);
+            }
+            array[size[0]++] = ChunkMap.key(x, z);
+        }
+
+        public boolean isEmpty() {
+            return this.keys.isEmpty();
+        }
+
+        /**
+         * Returns the keys of each instance, trimmed to their size.
+         *
+         * @return the groups
+         */
+        public Map<ZoneInstance, long[]> getGroups() {
+            final IdentityHashMap<ZoneInstance, long[]> groups = new IdentityHashMap<ZoneInstance, long[]>(this.keys.size());
+            for(Map.Entry<ZoneInstance, long[]> entry : this.keys.entrySet()) {
+                groups.put(entry.getKey(), Arrays.copyOf(entry.getValue(), this.sizes.get(entry.getKey())[0]));
+            }
+            return groups;
+        }
+
+    }
+
+    /**
+     * Encodes sorted keys as the differences between consecutive keys, each
+     * one written as an unsigned variable length integer.
+     */
+    static byte[] encode(long[] sortedKeys) {
+        byte[] bytes = new byte[sortedKeys.length * 2 + 10];
+        int length = 0;
+        long previous = 0;
+        for(long key : sortedKeys) {
+            if (length + 10 > bytes.length)
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            long delta = key - previous;
+            previous = key;
+            while ((delta & ~0x7FL) != 0) {
+                bytes[length++] = (byte) (delta & 0x7F | 0x80);
+                delta >>>= 7;
+            }
+            bytes[length++] = (byte) delta;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    static long[] decode(byte[] bytes, int count) {
+        final long[] keys = new long[count];
+        int index = 0;
+        long previous = 0;
+        for(int i = 0; i < count; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (index >= bytes.length)
+                    return Arrays.copyOf(keys, i);
+                b = bytes[index++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += delta;
+            keys[i] = previous;
+        }
+        return keys;
+    }
+
+}
@@ -0,0 +1,134 @@
+package factionmod.data;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Decides when the modified datas are written. The modifications are counted
+ * per category and written together, at most once per interval, so a burst of
+ * modifications costs one write. An operation which needs its modifications
+ * to be written quickly can request a durable save, the datas are then
+ * written at the end of the tick whatever the interval.
+ *
+ * @author BrokenSwing
+ *
+ */
+public class SaveCoordinator {
+
+    /**
+     * The categories of modifications.
+     */
+    public static enum Category {
+        FACTION, EXPERIENCE, DAMAGES, INVENTORY, CLAIM;
+    }
+
+    private final long[] mutations = new long[Category.values().length];
+    private final long[] pending   = new long[Category.values().length];
+    private long         writes    = 0;
+    private long         lastWrite = System.currentTimeMillis();
+    private boolean      durable   = false;
+
+    /**
+     * Counts a modification.
+     *
+     * @param category
+     *            The category of the modification
+     */
+    public void mutation(Category category) {
+        this.mutations[category.ordinal()]++;
+        this.pending[category.ordinal()]++;
+    }
+
+    /**
+     * Requests the modified datas to be written at the end of the tick.
+     */
+    public void requestDurability() {
+        this.durable = true;
+    }
+
+    /**
+     * Indicates if the modified datas should be written now.
+     *
+     * @param now
+     *            The current time in milliseconds
+     * @param interval
+     *            The minimum time between two writes in milliseconds
+     * @return true if a durable save was requested or if the last write is
+     *         older than the interval
+     */
+    public boolean shouldWrite(long now, long interval) {
+        return this.durable || now - this.lastWrite >= interval;
+    }
+
+    /**
+     * Indicates the modified datas were written.
+     *
+     * @param now
+     *            The current time in milliseconds
+     */
+    public void written(long now) {
+        this.writes++;
+        this.lastWrite = now;
+        this.durable = false;
+        for(int i = 0; i < this.pending.length; i++) {
+            this.pending[i] = 0;
+        }
+    }
+
+    /**
+     * Returns the amount of modifications of the category since the server
+     * started.
+     *
+     * @param category
+     *            The category
+     * @return the amount of modifications
+     */
+    public long getMutations(Category category) {
+        return this.mutations[category.ordinal()];
+    }
+
+    /**
+     * Returns the amount of modifications of the category since the last
+     * write.
+     *
+     * @param category
+     *            The category
+     * @return the amount of modifications not written yet
+     */
+    public long getPendingMutations(Category category) {
+        return this.pending[category.ordinal()];
+    }
+
+    /**
+     * Returns the amount of writes since the server started.
+     *
+     * @return the amount of writes
+     */
+    public long getWrites() {
+        return this.writes;
+    }
+
+    /**
+     * Returns the amount of modifications of each category since the server
+     * started.
+     *
+     * @return a new map
+     */
+    public Map<Category, Long> getMutations() {
+        final EnumMap<Category, Long> map = new EnumMap<Category, Long>(Category.class);
+        for(Category category : Category.values()) {
+            map.put(category, this.mutations[category.ordinal()]);
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        long total = 0;
+        for(long count : this.mutations) {
+            total += count;
+        }
+        return total + " modifications " + this.getMutations() + " written in " + this.writes + " writes";
+    }
+
+}
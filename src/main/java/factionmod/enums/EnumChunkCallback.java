@@ -0,0 +1,107 @@
+package factionmod.enums;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+
+import factionmod.manager.ChunkManager;
+import factionmod.manager.IChunkManager;
+import net.minecraft.world.World;
+import net.minecraftforge.event.enchanting.EnchantmentLevelSetEvent;
+import net.minecraftforge.event.entity.EntityJoinWorldEvent;
+import net.minecraftforge.event.entity.item.ItemTossEvent;
+import net.minecraftforge.event.entity.living.LivingEntityUseItemEvent;
+import net.minecraftforge.event.entity.living.LivingHurtEvent;
+import net.minecraftforge.event.entity.player.AttackEntityEvent;
+import net.minecraftforge.event.entity.player.FillBucketEvent;
+import net.minecraftforge.event.entity.player.PlayerInteractEvent.EntityInteract;
+import net.minecraftforge.event.entity.player.PlayerInteractEvent.RightClickBlock;
+import net.minecraftforge.event.entity.player.PlayerInteractEvent.RightClickItem;
+import net.minecraftforge.event.world.BlockEvent.BreakEvent;
+import net.minecraftforge.event.world.BlockEvent.PlaceEvent;
+
+/**
+ * All the callbacks of {@link IChunkManager} the chunk managers can handle.
+ * Each callback has a bit in a mask, it's used to know which events have to be
+ * dispatched.
+ *
+ * @author BrokenSwing
+ *
+ */
+public enum EnumChunkCallback {
+
+    BREAK_BLOCK("onBreakBlock", BreakEvent.class),
+    PLACE_BLOCK("onPlaceBlock", PlaceEvent.class),
+    BLOCKS_EXPLODE("onBlocksExplode", World.class, List.class),
+    ENTITY_HURT("onEntityHurt", LivingHurtEvent.class),
+    RIGHT_CLICK_BLOCK("onPlayerRightClickBlock", RightClickBlock.class),
+    RIGHT_CLICK_ENTITY("onPlayerRightClickEntity", EntityInteract.class),
+    RIGHT_CLICK_ITEM("onPlayerRightClickItem", RightClickItem.class),
+    ENTITY_JOIN("onEntityJoin", EntityJoinWorldEvent.class),
+    ENCHANTMENT_LEVEL_SET("onEnchantmentLevelSet", EnchantmentLevelSetEvent.class),
+    ITEM_TOSS("onItemToss", ItemTossEvent.class),
+    ENTITY_USE_ITEM("onEntityUseItem", LivingEntityUseItemEvent.class),
+    BUCKET_FILL("onBucketFill", FillBucketEvent.class),
+    PLAYER_ATTACK("onPlayerAttack", AttackEntityEvent.class);
+
+    /** A mask with the bits of all the callbacks */
+    public static final int                        ALL   = (1 << values().length) - 1;
+
+    private static final HashMap<Class<?>, Integer> CACHE = new HashMap<Class<?>, Integer>();
+
+    private final String                           methodName;
+    private final Class<?>[]                       parameters;
+
+    private EnumChunkCallback(String methodName, Class<?>... parameters) {
+        this.methodName = methodName;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Returns the bit of this callback.
+     *
+     * @return the mask
+     */
+    public int getMask() {
+        return 1 << this.ordinal();
+    }
+
+    /**
+     * Indicates if the bit of this callback is set in the given mask.
+     *
+     * @param mask
+     *            The mask
+     * @return true if the bit is set
+     */
+    public boolean isIn(int mask) {
+        return (mask & this.getMask()) != 0;
+    }
+
+    /**
+     * Returns the mask of the callbacks handled by the given class. A callback
+     * is handled if the class doesn't inherit the empty implementation of
+     * {@link ChunkManager}.
+     *
+     * @param clazz
+     *            The class of an {@link IChunkManager}
+     * @return the mask
+     */
+    public static int getCallbacksOf(Class<?> clazz) {
+        Integer cached = CACHE.get(clazz);
+        if (cached != null)
+            return cached.intValue();
+        int mask = 0;
+        for(EnumChunkCallback callback : values()) {
+            try {
+                Method method = clazz.getMethod(callback.methodName, callback.parameters);
+                if (method.getDeclaringClass() != ChunkManager.class)
+                    mask |= callback.getMask();
+            } catch (NoSuchMethodException e) {
+                mask |= callback.getMask();
+            }
+        }
+        CACHE.put(clazz, mask);
+        return mask;
+    }
+
+}
@@ -27,4 +27,13 @@ public enum EnumPermission {
 		return this.displayName;
 	}
 
+	/**
+	 * Returns the bit of this permission in a permission word.
+	 * 
+	 * @return the mask
+	 */
+	public int getMask() {
+		return 1 << this.ordinal();
+	}
+
 }
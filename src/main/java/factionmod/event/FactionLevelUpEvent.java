@@ -4,8 +4,8 @@ import net.minecraftforge.fml.common.eventhandler.Event;
 import factionmod.faction.Faction;
 
 /**
- * This event is fired when a faction levels up. This is not cancelable. This
- * has no result.
+ * This event is fired when a faction levels up, once for all the levels gained
+ * at the same time. This is not cancelable. This has no result.
  * 
  * @author BrokenSwing
  *
@@ -13,9 +13,15 @@ import factionmod.faction.Faction;
 public class FactionLevelUpEvent extends Event {
 
 	private final Faction	faction;
+	private final int		previousLevel;
 
 	public FactionLevelUpEvent(Faction faction) {
+		this(faction, faction.getLevel() - 1);
+	}
+
+	public FactionLevelUpEvent(Faction faction, int previousLevel) {
 		this.faction = faction;
+		this.previousLevel = previousLevel;
 	}
 
 	/**
@@ -27,4 +33,14 @@ public class FactionLevelUpEvent extends Event {
 		return this.faction;
 	}
 
+	/**
+	 * The level of the faction before it levels up. The faction can gain
+	 * several levels at once.
+	 * 
+	 * @return The previous level
+	 */
+	public int getPreviousLevel() {
+		return this.previousLevel;
+	}
+
 }
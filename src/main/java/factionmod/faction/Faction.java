@@ -2,7 +2,9 @@ package factionmod.faction;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import factionmod.config.ConfigGeneral;
@@ -12,6 +14,7 @@ import factionmod.event.GradeChangeEvent;
 import factionmod.event.RecruitLinkChangedEvent;
 import factionmod.handler.EventHandlerExperience;
 import factionmod.inventory.FactionInventory;
+import factionmod.utils.ClaimSet;
 import factionmod.utils.DimensionalBlockPos;
 import factionmod.utils.DimensionalPosition;
 import net.minecraft.nbt.NBTTagCompound;
@@ -30,8 +33,11 @@ import net.minecraftforge.common.util.INBTSerializable;
 public class Faction implements INBTSerializable<NBTTagCompound> {
 
     private final ArrayList<Member>              members     = new ArrayList<Member>();
+    /** Links the UUID of each member to the member, same content as members */
+    private final HashMap<UUID, Member>          membersById = new HashMap<UUID, Member>();
+    private Member                               owner       = null;
     private final ArrayList<UUID>                invitations = new ArrayList<UUID>();
-    private final ArrayList<DimensionalPosition> chunks      = new ArrayList<DimensionalPosition>();
+    private final ClaimSet                       chunks      = new ClaimSet();
     private DimensionalBlockPos                  homePos     = null;
     private final ArrayList<Grade>               grades      = new ArrayList<Grade>();
     private FactionInventory                     inventory;
@@ -49,6 +55,7 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
         this.description = desc;
         this.inventory = new FactionInventory(name);
         this.members.add(owner);
+        this.membersById.put(owner.getUUID(), owner);
     }
 
     public Faction(NBTTagCompound nbt) {
@@ -108,7 +115,7 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
         this.damages += damage;
         if (damages > ConfigGeneral.getInt("max_faction_damages"))
             damages = ConfigGeneral.getInt("max_faction_damages");
-        FactionModDatas.save();
+        FactionModDatas.saveDamages(this);
     }
 
     /**
@@ -131,7 +138,7 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
         if (this.damages < 0) {
             this.damages = 0;
         }
-        FactionModDatas.save();
+        FactionModDatas.saveDamages(this);
     }
 
     /**
@@ -139,11 +146,13 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
      */
     public void resetDamages() {
         this.damages = 0;
-        FactionModDatas.save();
+        FactionModDatas.saveDamages(this);
     }
 
     /**
-     * Adds a grade to the faction.
+     * Adds a grade to the faction. If a grade with the same name exists, it's
+     * replaced and the members having it get the new one along with its
+     * permissions.
      * 
      * @param grade
      *            The grade to add
@@ -159,7 +168,7 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
             grades.remove(g);
         }
         grades.add(grade);
-        FactionModDatas.save();
+        FactionModDatas.save(this);
     }
 
     /**
@@ -193,7 +202,7 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
             }
         }
         this.grades.remove(grade);
-        FactionModDatas.save();
+        FactionModDatas.save(this);
     }
 
     /**
@@ -207,16 +216,15 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
     }
 
     /**
-     * Sets the current level of the faction. Then call
-     * {@link Faction#increaseExp(0)} to change the level if the maximum
-     * experience si reached.
+     * Sets the current level of the faction. Then the level is increased if
+     * the experience needed to level up is reached.
      * 
      * @param level
      */
     public void setLevel(int level) {
         this.level = level;
-        this.increaseExp(0, null);
-        FactionModDatas.save();
+        this.updateLevel();
+        FactionModDatas.saveExperience(this);
     }
 
     /**
@@ -229,17 +237,16 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
     }
 
     /**
-     * Sets the current experience to the given amount. Then calls
-     * {@link Faction#increaseExp(0)} to change the level if the experience is
-     * too high.
+     * Sets the current experience to the given amount. Then the level is
+     * increased if the experience is too high.
      * 
      * @param exp
      *            The new amount of experience of the faction
      */
     public void setExp(int exp) {
         this.exp = exp;
-        this.increaseExp(0, null);
-        FactionModDatas.save();
+        this.updateLevel();
+        FactionModDatas.saveExperience(this);
     }
 
     /**
@@ -247,8 +254,8 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
      * to level up is reached, the level of the faction is increased and the
      * experience is consumed, then
      * {@link EventHandlerExperience#onLevelUp(Faction)} is fired. If the
-     * specified amount of experience is equals to or lower than 0, the fonction
-     * will do nothing.
+     * specified amount of experience is lower than 0, the fonction will do
+     * nothing.
      * 
      * @param exp
      *            The amount of experience to add
@@ -264,19 +271,53 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
                 m.addExperience(exp);
         }
         this.exp += exp;
-        int neededXp = Levels.getExpNeededForLevel(this.level + 1);
-        if (this.exp >= neededXp) {
+        this.updateLevel();
+        FactionModDatas.saveExperience(this);
+    }
+
+    /**
+     * Increase the experience from the experience won by several members. The
+     * levels reached are applied at once and a single
+     * {@link FactionLevelUpEvent} is fired.
+     * 
+     * @param exp
+     *            The total amount of experience to add
+     * @param membersExp
+     *            The experience won by each member, the members which left
+     *            the faction are ignored
+     */
+    public void applyExperience(int exp, Map<UUID, Integer> membersExp) {
+        if (exp < 0)
+            return;
+        for(Map.Entry<UUID, Integer> entry : membersExp.entrySet()) {
+            Member m = getMember(entry.getKey());
+            if (m != null)
+                m.addExperience(entry.getValue());
+        }
+        this.exp += exp;
+        this.updateLevel();
+        FactionModDatas.saveExperience(this);
+    }
+
+    /**
+     * Consumes the experience to increase the level as much as possible, then
+     * fires a {@link FactionLevelUpEvent} if the level changed.
+     */
+    private void updateLevel() {
+        final int previousLevel = this.level;
+        int neededXp = Levels.getExpNeededForLevel(this, this.level + 1);
+        while (neededXp > 0 && this.exp >= neededXp) {
             this.level++;
-            MinecraftForge.EVENT_BUS.post(new FactionLevelUpEvent(this));
             this.exp -= neededXp;
-            this.increaseExp(0, member);
+            neededXp = Levels.getExpNeededForLevel(this, this.level + 1);
         }
-        FactionModDatas.save();
+        if (this.level != previousLevel)
+            MinecraftForge.EVENT_BUS.post(new FactionLevelUpEvent(this, previousLevel));
     }
 
     /**
      * Returns the current experience of the faction. See
-     * {@link Levels#getExpNeededForLevel(int)} to know the experience needed to
+     * {@link Levels#getExpNeededForLevel(Faction, int)} to know the experience needed to
      * level up.
      * 
      * @return The amount of experience
@@ -291,12 +332,17 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
      * @return the owner
      */
     public Member getOwner() {
+        final Member cached = this.owner;
+        if (cached != null && cached.getGrade() == Grade.OWNER && this.membersById.get(cached.getUUID()) == cached)
+            return cached;
+        this.owner = null;
         for(Member member : members) {
             if (member.getGrade() == Grade.OWNER) {
-                return member;
+                this.owner = member;
+                break;
             }
         }
-        return null;
+        return this.owner;
     }
 
     /**
@@ -306,8 +352,8 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
      *            The position of the chunk
      */
     public void addChunk(DimensionalPosition position) {
-        this.chunks.add(position);
-        FactionModDatas.save();
+        if (this.chunks.add(position))
+            FactionModDatas.saveChunk(this, position, true);
     }
 
     /**
@@ -318,22 +364,67 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
      *            The position of the chunk
      */
     public void removeChunk(DimensionalPosition position) {
-        this.chunks.remove(position);
+        if (!this.chunks.remove(position))
+            return;
         if (this.homePos != null) {
             if (this.homePos.toDimensionnalPosition().equals(position)) {
                 this.homePos = null;
             }
         }
-        FactionModDatas.save();
+        FactionModDatas.saveChunk(this, position, false);
     }
 
     /**
-     * Returns all positions of the chunks claimed by the faction.
+     * Returns all positions of the chunks claimed by the faction. The list is
+     * a copy, use {@link Faction#getChunkCount()} or
+     * {@link Faction#isChunkClaimed(DimensionalPosition)} when possible.
      * 
      * @return a {@link List}
      */
     public List<DimensionalPosition> getChunks() {
-        return Collections.unmodifiableList(this.chunks);
+        return Collections.unmodifiableList(this.chunks.toList());
+    }
+
+    /**
+     * Returns the amount of chunks claimed by the faction.
+     * 
+     * @return the amount of chunks
+     */
+    public int getChunkCount() {
+        return this.chunks.size();
+    }
+
+    /**
+     * Indicates if the chunk is claimed by the faction.
+     * 
+     * @param position
+     *            The position of the chunk
+     * @return true if the chunk is claimed by the faction
+     */
+    public boolean isChunkClaimed(DimensionalPosition position) {
+        return this.chunks.contains(position);
+    }
+
+    /**
+     * Indicates if the chunk is claimed by the faction and at least one of its
+     * four neighbours isn't.
+     * 
+     * @param position
+     *            The position of the chunk
+     * @return true if the chunk is at the edge of the territory
+     */
+    public boolean isChunkAtEdge(DimensionalPosition position) {
+        return this.chunks.isAtEdge(position);
+    }
+
+    /**
+     * Returns the positions of the claimed chunks which have at least one
+     * neighbour not claimed by the faction.
+     * 
+     * @return a {@link List}
+     */
+    public List<DimensionalPosition> getBorderChunks() {
+        return Collections.unmodifiableList(this.chunks.getBorder());
     }
 
     /**
@@ -345,11 +436,7 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
      * @return the {@link Member} or null
      */
     public Member getMember(UUID uuid) {
-        for(Member m : members) {
-            if (m.getUUID().equals(uuid))
-                return m;
-        }
-        return null;
+        return this.membersById.get(uuid);
     }
 
     /**
@@ -360,7 +447,7 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
      */
     public void setHome(DimensionalBlockPos pos) {
         this.homePos = pos;
-        FactionModDatas.save();
+        FactionModDatas.save(this);
     }
 
     /**
@@ -381,7 +468,7 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
      */
     public void setDesc(String desc) {
         this.description = desc;
-        FactionModDatas.save();
+        FactionModDatas.save(this);
     }
 
     /**
@@ -408,11 +495,11 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
     public boolean toogleInvitation(UUID uuid) {
         if (invitations.contains(uuid)) {
             invitations.remove(uuid);
-            FactionModDatas.save();
+            FactionModDatas.save(this);
             return false;
         }
         invitations.add(uuid);
-        FactionModDatas.save();
+        FactionModDatas.save(this);
         return true;
     }
 
@@ -435,12 +522,7 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
      * @return true if the player is a member
      */
     public boolean isMember(UUID uuid) {
-        for(Member member : members) {
-            if (member.getUUID().equals(uuid)) {
-                return true;
-            }
-        }
-        return false;
+        return this.membersById.containsKey(uuid);
     }
 
     /**
@@ -462,9 +544,12 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
      *            The instance of the member.
      */
     public void addMember(Member member) {
+        final Member previous = this.membersById.put(member.getUUID(), member);
+        if (previous != null)
+            this.members.remove(previous);
         this.members.add(member);
         this.invitations.remove(member.getUUID());
-        FactionModDatas.save();
+        FactionModDatas.saveMember(this, member, true);
     }
 
     /**
@@ -474,17 +559,13 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
      *            The {@link UUID} of the player
      */
     public void removeMember(UUID uuid) {
-        Member toRemove = null;
-        for(Member m : members) {
-            if (m.getUUID().equals(uuid)) {
-                toRemove = m;
-                break;
-            }
-        }
+        final Member toRemove = this.membersById.remove(uuid);
         if (toRemove != null) {
             members.remove(toRemove);
+            if (toRemove == this.owner)
+                this.owner = null;
+            FactionModDatas.saveMember(this, toRemove, false);
         }
-        FactionModDatas.save();
     }
 
     /**
@@ -504,7 +585,7 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
      */
     public void setOpened(boolean opened) {
         this.opened = opened;
-        FactionModDatas.save();
+        FactionModDatas.save(this);
     }
 
     /**
@@ -542,7 +623,11 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
 
         NBTTagList membersList = nbt.getTagList("members", NBT.TAG_COMPOUND);
         for(int i = 0; i < membersList.tagCount(); i++) {
-            this.members.add(new Member(membersList.getCompoundTagAt(i), this));
+            final Member member = new Member(membersList.getCompoundTagAt(i), this);
+            final Member previous = this.membersById.put(member.getUUID(), member);
+            if (previous != null)
+                this.members.remove(previous);
+            this.members.add(member);
         }
 
         NBTTagList invitationsList = nbt.getTagList("invitations", NBT.TAG_COMPOUND);
@@ -591,7 +676,7 @@ public class Faction implements INBTSerializable<NBTTagCompound> {
         nbt.setTag("invitations", invitationsList);
 
         NBTTagList chunksList = new NBTTagList();
-        for(DimensionalPosition pos : this.chunks) {
+        for(DimensionalPosition pos : this.chunks.toList()) {
             chunksList.appendTag(pos.serializeNBT());
         }
         nbt.setTag("chunks", chunksList);
@@ -1,10 +1,11 @@
 package factionmod.faction;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 
 import com.google.common.base.Joiner;
-import com.google.common.collect.Lists;
 
 import factionmod.enums.EnumPermission;
 import net.minecraft.nbt.NBTTagCompound;
@@ -24,10 +25,12 @@ public class Grade implements INBTSerializable<NBTTagCompound>, Comparable<Grade
     public static final Grade    OWNER  = new Grade("Owner", 0, EnumPermission.values());
     public static final Grade    MEMBER = new Grade("Member", -1, new EnumPermission[0]);
 
-    private String               name;
-    private int                  priority;
-    private List<EnumPermission> permissions;
-    
+    private String                    name;
+    private int                       priority;
+    private EnumSet<EnumPermission>   permissions;
+    private List<EnumPermission>      permissionList;
+    private int                       permissionBits;
+
     public Grade(NBTTagCompound nbt) {
         this.deserializeNBT(nbt);
     }
@@ -35,7 +38,20 @@ public class Grade implements INBTSerializable<NBTTagCompound>, Comparable<Grade
     public Grade(String name, int priority, EnumPermission[] permissions) {
         this.name = name;
         this.priority = priority;
-        this.permissions = Lists.newArrayList(permissions);
+        this.permissions = EnumSet.noneOf(EnumPermission.class);
+        for(EnumPermission perm : permissions) {
+            this.permissions.add(perm);
+        }
+        this.refreshPermissionBits();
+    }
+
+    private void refreshPermissionBits() {
+        int bits = 0;
+        for(EnumPermission perm : this.permissions) {
+            bits |= perm.getMask();
+        }
+        this.permissionBits = bits;
+        this.permissionList = Collections.unmodifiableList(new ArrayList<>(this.permissions));
     }
 
     public String getName() {
@@ -46,22 +62,52 @@ public class Grade implements INBTSerializable<NBTTagCompound>, Comparable<Grade
         return priority;
     }
 
+    /**
+     * Returns a read-only list of the permissions of the grade, in the order
+     * of {@link EnumPermission}.
+     * 
+     * @return the permissions
+     */
     public List<EnumPermission> getPermissions() {
-        return permissions;
-    }
-
+        return this.permissionList;
+    }
+
+    /**
+     * Returns the permissions of the grade as a word where each permission is
+     * represented by {@link EnumPermission#getMask()}.
+     * 
+     * @return the permission word
+     */
+    public int getPermissionBits() {
+        return this.permissionBits;
+    }
+
+    /**
+     * Adds a permission to the grade, the members having this grade get it
+     * immediately.
+     * 
+     * @param perm
+     *            The permission to add
+     */
     public void addPermission(EnumPermission perm) {
-        if (!this.permissions.contains(perm)) {
-            this.permissions.add(perm);
-        }
+        this.permissions.add(perm);
+        this.refreshPermissionBits();
     }
 
     public boolean hasPermission(EnumPermission perm) {
-        return this.permissions.contains(perm);
+        return (this.permissionBits & perm.getMask()) != 0;
     }
 
+    /**
+     * Removes a permission from the grade, the members having this grade lose
+     * it immediately.
+     * 
+     * @param perm
+     *            The permission to remove
+     */
     public void removePermission(EnumPermission perm) {
         this.permissions.remove(perm);
+        this.refreshPermissionBits();
     }
 
     public NBTTagCompound toNBT() {
@@ -100,13 +146,14 @@ public class Grade implements INBTSerializable<NBTTagCompound>, Comparable<Grade
         this.name = nbt.getString("name");
         this.priority = nbt.getInteger("priority");
 
-        this.permissions = new ArrayList<EnumPermission>();
+        this.permissions = EnumSet.noneOf(EnumPermission.class);
         NBTTagList permissionsList = nbt.getTagList("permissions", NBT.TAG_STRING);
         for(int i = 0; i < permissionsList.tagCount(); i++) {
             try {
                 this.permissions.add(EnumPermission.valueOf(permissionsList.getStringTagAt(i)));
             } catch (IllegalArgumentException e) {}
         }
+        this.refreshPermissionBits();
     }
 
     @Override
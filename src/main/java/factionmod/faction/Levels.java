@@ -1,39 +1,185 @@
 package factionmod.faction;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.IllegalFormatException;
+
 import factionmod.config.ConfigExperience;
-import factionmod.math.Expression;
+import factionmod.math.CompiledExpression;
+import factionmod.utils.ServerUtils;
 
 /**
  * This class is used to know everything about the levels of a faction.
- * 
+ * <p>
+ * The expressions of the configuration can use the variables "level",
+ * "members", "chunks", "damages" and "online_members". The level can also be
+ * written %1$s like in the previous versions.
+ *
  * @author BrokenSwing
  *
  */
 public class Levels {
 
+    private static final LevelCurve EXP_NEEDED     = new LevelCurve("experience_from_level");
+    private static final LevelCurve MAXIMUM_CHUNKS = new LevelCurve("chunk_count_from_level");
+
     /**
-     * Indicates the amount of experience need to level up.
-     * 
+     * Indicates the amount of experience need to level up. The variables
+     * other than the level are 0.
+     *
      * @param level
      *            The level to reach
      * @return the amount of experience needed
      */
     public static int getExpNeededForLevel(int level) {
-        String exp = ConfigExperience.getExpression("experience_from_level");
-        return new Expression(String.format(exp, level)).eval().intValue();
+        return EXP_NEEDED.get(null, level);
+    }
+
+    /**
+     * Indicates the amount of experience the faction needs to level up.
+     *
+     * @param faction
+     *            The faction
+     * @param level
+     *            The level to reach
+     * @return the amount of experience needed
+     */
+    public static int getExpNeededForLevel(Faction faction, int level) {
+        return EXP_NEEDED.get(faction, level);
     }
 
     /**
      * Indicates the maximum of chunks that a faction can claim at a specified
-     * level.
-     * 
+     * level. The variables other than the level are 0.
+     *
      * @param level
      *            The level of the faction
      * @return the maximum count of chunks that can be claimed
      */
     public static int getMaximumChunksForLevel(int level) {
-        String exp = ConfigExperience.getExpression("chunk_count_from_level");
-        return new Expression(String.format(exp, level)).eval().intValue();
+        return MAXIMUM_CHUNKS.get(null, level);
+    }
+
+    /**
+     * Indicates the maximum of chunks that the faction can claim at a
+     * specified level.
+     *
+     * @param faction
+     *            The faction
+     * @param level
+     *            The level of the faction
+     * @return the maximum count of chunks that can be claimed
+     */
+    public static int getMaximumChunksForLevel(Faction faction, int level) {
+        return MAXIMUM_CHUNKS.get(faction, level);
+    }
+
+    /**
+     * Forgets the parsed expressions and the computed values, it has to be
+     * called when the configuration is reloaded.
+     */
+    public static void invalidate() {
+        EXP_NEEDED.invalidate();
+        MAXIMUM_CHUNKS.invalidate();
+    }
+
+    /**
+     * An expression of the configuration, parsed once. If it only depends on
+     * the level, the value of each level is computed once.
+     */
+    private static class LevelCurve {
+
+        private static final String[] VARIABLES      = { "level", "members", "chunks", "damages", "online_members" };
+        private static final int      LEVEL          = 0;
+        private static final int      MEMBERS        = 1;
+        private static final int      CHUNKS         = 2;
+        private static final int      DAMAGES        = 3;
+        private static final int      ONLINE_MEMBERS = 4;
+
+        /** The values of the higher levels are computed each time */
+        private static final int      MAX_CACHE      = 4096;
+        private static final int      UNKNOWN        = Integer.MIN_VALUE;
+
+        private final String          name;
+        private CompiledExpression    expression;
+        private boolean               levelOnly;
+        private int[]                 values         = new int[0];
+
+        private LevelCurve(String name) {
+            this.name = name;
+        }
+
+        private synchronized void invalidate() {
+            this.expression = null;
+            this.values = new int[0];
+        }
+
+        private synchronized int get(Faction faction, int level) {
+            if (this.expression == null)
+                this.compile();
+            if (!this.levelOnly || level < 0 || level >= MAX_CACHE)
+                return this.compute(faction, level);
+            if (level >= this.values.length) {
+                final int oldLength = this.values.length;
+                this.values = Arrays.copyOf(this.values, Math.min(MAX_CACHE, Math.max(level + 1, oldLength * 2)));
+                Arrays.fill(this.values, oldLength, this.values.length, UNKNOWN);
+            }
+            if (this.values[level] == UNKNOWN)
+                this.values[level] = this.compute(faction, level);
+            return this.values[level];
+        }
+
+        /**
+         * Parses the expression, replacing %1$s by the variable of the level.
+         * An expression which can't be formatted, because it uses the modulo
+         * operator for example, is parsed as it is.
+         */
+        private void compile() {
+            final String source = ConfigExperience.getExpression(this.name);
+            String formula;
+            try {
+                formula = String.format(source, VARIABLES[LEVEL]);
+            } catch (IllegalFormatException e) {
+                formula = source;
+            }
+            final CompiledExpression compiled = CompiledExpression.compile(formula, VARIABLES);
+            boolean levelOnly = true;
+            for(int i = 0; i < VARIABLES.length; i++) {
+                if (i != LEVEL && compiled.usesVariable(i))
+                    levelOnly = false;
+            }
+            this.levelOnly = levelOnly;
+            this.expression = compiled;
+        }
+
+        private int compute(Faction faction, int level) {
+            final BigDecimal[] values = new BigDecimal[VARIABLES.length];
+            Arrays.fill(values, BigDecimal.ZERO);
+            values[LEVEL] = BigDecimal.valueOf(level);
+            if (faction != null) {
+                if (this.expression.usesVariable(MEMBERS))
+                    values[MEMBERS] = BigDecimal.valueOf(faction.getMembers().size());
+                if (this.expression.usesVariable(CHUNKS))
+                    values[CHUNKS] = BigDecimal.valueOf(faction.getChunkCount());
+                if (this.expression.usesVariable(DAMAGES))
+                    values[DAMAGES] = BigDecimal.valueOf(faction.getDamages());
+                if (this.expression.usesVariable(ONLINE_MEMBERS))
+                    values[ONLINE_MEMBERS] = BigDecimal.valueOf(countOnlineMembers(faction));
+            }
+            return this.expression.eval(values).intValue();
+        }
+
+        private static int countOnlineMembers(Faction faction) {
+            if (ServerUtils.getServer() == null)
+                return 0;
+            int online = 0;
+            for(Member member : faction.getMembers()) {
+                if (ServerUtils.getPlayer(member.getUUID()) != null)
+                    online++;
+            }
+            return online;
+        }
+
     }
 
 }
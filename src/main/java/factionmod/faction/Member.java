@@ -110,6 +110,7 @@ public class Member implements Comparable<Member> {
      */
     public void deserializeNBT(NBTTagCompound nbt, Faction faction) {
         this.uuid = nbt.getUniqueId("uuid");
+        this.experience = nbt.getInteger("experience");
         String gradeName = nbt.getString("grade");
         if (Grade.OWNER.getName().equalsIgnoreCase(gradeName))
             this.grade = Grade.OWNER;
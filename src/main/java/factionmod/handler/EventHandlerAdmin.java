@@ -5,10 +5,12 @@ import java.util.UUID;
 
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraftforge.event.entity.player.PlayerEvent.Clone;
 import net.minecraftforge.fml.common.Mod.EventBusSubscriber;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerLoggedOutEvent;
 import factionmod.FactionMod;
+import factionmod.capability.PlayerData;
 
 /**
  * Handles the permissions of the admins. It also store them.
@@ -31,6 +33,17 @@ public class EventHandlerAdmin {
 		removeAdmin((EntityPlayerMP) event.player);
 	}
 
+	/**
+	 * Used to keep the admins when they respawn, the player is a new entity.
+	 * 
+	 * @param event
+	 */
+	@SubscribeEvent
+	public static void onPlayerClone(Clone event) {
+		if (ADMINS.remove(event.getOriginal()))
+			ADMINS.add((EntityPlayerMP) event.getEntityPlayer());
+	}
+
 	/**
 	 * Adds an admins.
 	 * 
@@ -40,6 +53,7 @@ public class EventHandlerAdmin {
 	public static void addAdmin(EntityPlayerMP player) {
 		if (!ADMINS.contains(player)) {
 			ADMINS.add(player);
+			setAdminFlag(player, true);
 			player.refreshDisplayName();
 		}
 	}
@@ -52,9 +66,16 @@ public class EventHandlerAdmin {
 	 */
 	public static void removeAdmin(EntityPlayerMP player) {
 		ADMINS.remove(player);
+		setAdminFlag(player, false);
 		player.refreshDisplayName();
 	}
 
+	private static void setAdminFlag(EntityPlayerMP player, boolean admin) {
+		PlayerData data = PlayerData.get(player);
+		if (data != null)
+			data.setAdmin(admin);
+	}
+
 	/**
 	 * Indicates if a player is admin.
 	 * 
@@ -63,7 +84,8 @@ public class EventHandlerAdmin {
 	 * @return true if the player is admin
 	 */
 	public static boolean isAdmin(EntityPlayerMP player) {
-		return ADMINS.contains(player);
+		PlayerData data = PlayerData.get(player);
+		return data != null ? data.isAdmin() : ADMINS.contains(player);
 	}
 
 	/**
@@ -1,22 +1,26 @@
 package factionmod.handler;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
 
 import factionmod.FactionMod;
+import factionmod.capability.PlayerData;
 import factionmod.data.FactionModDatas;
+import factionmod.enums.EnumChunkCallback;
 import factionmod.manager.IChunkManager;
 import factionmod.manager.instanciation.Zone;
 import factionmod.manager.instanciation.ZoneInstance;
 import factionmod.network.ModNetwork;
 import factionmod.network.PacketRemoveChunkData;
 import factionmod.network.PacketUpdateChunkDatas;
+import factionmod.utils.ChunkMap;
+import factionmod.utils.ClaimIndex;
 import factionmod.utils.DimensionalPosition;
 import factionmod.utils.ServerUtils;
 import net.minecraft.entity.Entity;
@@ -26,6 +30,7 @@ import net.minecraft.network.play.server.SPacketSetSlot;
 import net.minecraft.util.ClassInheritanceMultiMap;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.Style;
 import net.minecraft.util.text.TextComponentString;
@@ -36,7 +41,9 @@ import net.minecraftforge.event.enchanting.EnchantmentLevelSetEvent;
 import net.minecraftforge.event.entity.EntityEvent;
 import net.minecraftforge.event.entity.EntityJoinWorldEvent;
 import net.minecraftforge.event.entity.item.ItemTossEvent;
+import net.minecraftforge.event.entity.living.LivingEntityUseItemEvent;
 import net.minecraftforge.event.entity.living.LivingHurtEvent;
+import net.minecraftforge.event.entity.player.AttackEntityEvent;
 import net.minecraftforge.event.entity.player.FillBucketEvent;
 import net.minecraftforge.event.entity.player.PlayerInteractEvent.EntityInteract;
 import net.minecraftforge.event.entity.player.PlayerInteractEvent.RightClickBlock;
@@ -60,18 +67,33 @@ import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerLoggedOutEvent;
 public class EventHandlerChunk {
 
     /** Links all chunks to its manager */
-    private static final HashMap<DimensionalPosition, IChunkManager> MANAGERS         = new HashMap<DimensionalPosition, IChunkManager>();
+    private static final ClaimIndex<IChunkManager> MANAGERS         = new ClaimIndex<IChunkManager>();
     /**
      * Links all chunks to a {@link ZoneInstance} to recreate the manager when
      * reloading the server
      */
-    private static final HashMap<DimensionalPosition, ZoneInstance>  ZONE_INSTANCES   = new HashMap<DimensionalPosition, ZoneInstance>();
+    private static final ClaimIndex<ZoneInstance>  ZONE_INSTANCES   = new ClaimIndex<ZoneInstance>();
     /**
      * Links all the players with the name of the last manager which handled him
      */
-    private static final HashMap<UUID, String>                       CHUNK_NAME_CACHE = new HashMap<UUID, String>();
+    private static final HashMap<UUID, String>     CHUNK_NAME_CACHE = new HashMap<UUID, String>();
     /** Links each {@link Zone} with his name */
-    private static final HashMap<String, Zone>                       ZONE_MAPPING     = new HashMap<String, Zone>();
+    private static final HashMap<String, Zone>     ZONE_MAPPING     = new HashMap<String, Zone>();
+    /**
+     * For each callback, the amount of managed chunks of which the manager
+     * handles the callback while the {@link Zone} of the chunk doesn't
+     */
+    private static final int[]                     EXTRA_CALLBACKS  = new int[EnumChunkCallback.values().length];
+    /**
+     * The callbacks handled by at least one manager, the events of the other
+     * callbacks aren't dispatched
+     */
+    private static int                             handledCallbacks = 0;
+    /**
+     * Changes each time a manager is registered or unregistered, used to know
+     * if the manager cached in a {@link PlayerData} is still valid
+     */
+    private static int                             managersVersion  = 0;
 
     /**
      * Registers a {@link Zone}.
@@ -81,6 +103,46 @@ public class EventHandlerChunk {
      */
     public static void registerZone(Zone zone) {
         ZONE_MAPPING.put(zone.getName(), zone);
+        countExtraCallbacks();
+    }
+
+    /**
+     * Counts again the callbacks handled by the registered managers and not by
+     * their {@link Zone}, the zones may have changed since the managers were
+     * registered.
+     */
+    private static void countExtraCallbacks() {
+        Arrays.fill(EXTRA_CALLBACKS, 0);
+        MANAGERS.forEach((dim, x, z, manager) -> trackCallbacks(manager, ZONE_INSTANCES.get(dim, x, z), 1));
+        refreshHandledCallbacks();
+    }
+
+    /**
+     * Computes the mask of the callbacks which are handled by at least one
+     * registered {@link Zone} or by at least one registered manager.
+     */
+    private static void refreshHandledCallbacks() {
+        int callbacks = 0;
+        for(EnumChunkCallback callback : EnumChunkCallback.values()) {
+            if (EXTRA_CALLBACKS[callback.ordinal()] > 0)
+                callbacks |= callback.getMask();
+        }
+        for(Zone zone : ZONE_MAPPING.values()) {
+            callbacks |= zone.getCallbacks();
+        }
+        handledCallbacks = callbacks;
+    }
+
+    /**
+     * Indicates if at least one manager handles the given callback. If not,
+     * the event doesn't need to be dispatched.
+     * 
+     * @param callback
+     *            The callback
+     * @return true if the callback is handled
+     */
+    public static boolean isHandled(EnumChunkCallback callback) {
+        return (handledCallbacks & callback.getMask()) != 0;
     }
 
     /**
@@ -116,13 +178,112 @@ public class EventHandlerChunk {
      *            Set it to true if the name of the chunk should be refresh
      */
     public static void registerChunkManager(IChunkManager manager, DimensionalPosition pos, ZoneInstance instance, boolean refreshPlayers) {
-        MANAGERS.put(pos, manager);
-        ZONE_INSTANCES.put(pos, instance);
+        trackCallbacks(manager, instance, 1);
+        untrackReplaced(MANAGERS.put(pos, manager), ZONE_INSTANCES.put(pos, instance));
+        managersVersion++;
         if (refreshPlayers) {
             refreshPlayersDisplays(pos);
             sendChunkDatasToPlayers(pos, manager, instance);
         }
-        FactionModDatas.save();
+        FactionModDatas.save(pos);
+    }
+
+    /**
+     * Registers the same {@link IChunkManager} for many chunks of a dimension,
+     * used when the claims are loaded. The index is resized once, the players
+     * aren't refreshed and the claims aren't marked as modified.
+     * 
+     * @param manager
+     *            The manager
+     * @param instance
+     *            The instanciator of the manager
+     * @param dimension
+     *            The dimension of the chunks
+     * @param keys
+     *            The keys of the chunks, see {@link ChunkMap#key(int, int)}
+     */
+    public static void registerChunkManagers(IChunkManager manager, ZoneInstance instance, int dimension, long[] keys) {
+        trackCallbacks(manager, instance, keys.length);
+        ChunkMap<IChunkManager> managers = MANAGERS.getDimension(dimension);
+        ChunkMap<ZoneInstance> instances = ZONE_INSTANCES.getDimension(dimension);
+        MANAGERS.ensureCapacity(dimension, (managers == null ? 0 : managers.size()) + keys.length);
+        ZONE_INSTANCES.ensureCapacity(dimension, (instances == null ? 0 : instances.size()) + keys.length);
+        managers = MANAGERS.getDimension(dimension);
+        instances = ZONE_INSTANCES.getDimension(dimension);
+        for(long key : keys) {
+            untrackReplaced(managers.put(key, manager), instances.put(key, instance));
+        }
+        managersVersion++;
+    }
+
+    /**
+     * Registers the manager of a chunk read from the datas of the chunk, when
+     * the claims are stored in the chunks. The claim isn't marked as modified
+     * and the players aren't refreshed.
+     * 
+     * @param manager
+     *            The manager
+     * @param instance
+     *            The instanciator of the manager
+     * @param dimension
+     *            The dimension of the chunk
+     * @param chunkX
+     *            The x coordinate of the chunk
+     * @param chunkZ
+     *            The z coordinate of the chunk
+     */
+    public static void loadChunkManager(IChunkManager manager, ZoneInstance instance, int dimension, int chunkX, int chunkZ) {
+        trackCallbacks(manager, instance, 1);
+        untrackReplaced(MANAGERS.put(dimension, chunkX, chunkZ, manager), ZONE_INSTANCES.put(dimension, chunkX, chunkZ, instance));
+        managersVersion++;
+    }
+
+    /**
+     * Forgets the manager of a chunk which is unloaded, when the claims are
+     * stored in the chunks. The claim isn't marked as modified, it's still
+     * claimed.
+     * 
+     * @param dimension
+     *            The dimension of the chunk
+     * @param chunkX
+     *            The x coordinate of the chunk
+     * @param chunkZ
+     *            The z coordinate of the chunk
+     */
+    public static void unloadChunkManager(int dimension, int chunkX, int chunkZ) {
+        untrackReplaced(MANAGERS.remove(dimension, chunkX, chunkZ), ZONE_INSTANCES.remove(dimension, chunkX, chunkZ));
+        managersVersion++;
+    }
+
+    /**
+     * Adds the given amount of chunks to the counts of the callbacks handled
+     * by the manager and not by its {@link Zone}. The amount is negative when
+     * the manager is unregistered.
+     */
+    private static void trackCallbacks(IChunkManager manager, ZoneInstance instance, int amount) {
+        final Zone zone = instance == null ? null : ZONE_MAPPING.get(instance.getZoneName());
+        int extras = EnumChunkCallback.getCallbacksOf(manager.getClass());
+        if (zone != null)
+            extras &= ~zone.getCallbacks();
+        if (extras == 0)
+            return;
+        for(EnumChunkCallback callback : EnumChunkCallback.values()) {
+            if (callback.isIn(extras))
+                EXTRA_CALLBACKS[callback.ordinal()] += amount;
+        }
+        if (amount > 0)
+            handledCallbacks |= extras;
+        else
+            refreshHandledCallbacks();
+    }
+
+    /**
+     * Removes the callbacks of a manager which was replaced or unregistered
+     * from the counts.
+     */
+    private static void untrackReplaced(IChunkManager manager, ZoneInstance instance) {
+        if (manager != null)
+            trackCallbacks(manager, instance, -1);
     }
 
     /**
@@ -134,17 +295,76 @@ public class EventHandlerChunk {
      *            Set it to true if the name of the chunk should be refresh
      */
     public static void unregisterChunkManager(DimensionalPosition pos, boolean refreshPlayers) {
-        MANAGERS.remove(pos);
-        ZONE_INSTANCES.remove(pos);
+        untrackReplaced(MANAGERS.remove(pos), ZONE_INSTANCES.remove(pos));
+        managersVersion++;
         if (refreshPlayers) {
             refreshPlayersDisplays(pos);
             sendChunkDatasToPlayers(pos, null, null);
         }
-        FactionModDatas.save();
+        FactionModDatas.save(pos);
     }
 
+    /**
+     * Returns a snapshot of the {@link ZoneInstance} of each managed chunk. It
+     * copies the whole index, prefer
+     * {@link EventHandlerChunk#forEachZoneInstance(ClaimIndex.Visitor)}.
+     * 
+     * @return an unmodifiable map
+     */
     public static Map<DimensionalPosition, ZoneInstance> getZonesInstances() {
-        return Collections.unmodifiableMap(ZONE_INSTANCES);
+        final HashMap<DimensionalPosition, ZoneInstance> instances = new HashMap<DimensionalPosition, ZoneInstance>(ZONE_INSTANCES.size() * 2);
+        ZONE_INSTANCES.forEach((dim, x, z, instance) -> instances.put(new DimensionalPosition(new ChunkPos(x, z), dim), instance));
+        return Collections.unmodifiableMap(instances);
+    }
+
+    /**
+     * Returns the {@link ZoneInstance} of the manager of the chunk.
+     * 
+     * @param dimension
+     *            The dimension of the chunk
+     * @param chunkX
+     *            The x coordinate of the chunk
+     * @param chunkZ
+     *            The z coordinate of the chunk
+     * @return the instance or null if the chunk isn't managed
+     */
+    public static ZoneInstance getZoneInstance(int dimension, int chunkX, int chunkZ) {
+        return ZONE_INSTANCES.get(dimension, chunkX, chunkZ);
+    }
+
+    /**
+     * Returns the amount of managed chunks, all dimensions included.
+     * 
+     * @return the amount of chunks
+     */
+    public static int getManagedChunksCount() {
+        return ZONE_INSTANCES.size();
+    }
+
+    /**
+     * Makes sure the given amount of chunks of a dimension can be managed
+     * without resizing the index, used before loading the claims.
+     * 
+     * @param dimension
+     *            The dimension
+     * @param expected
+     *            The expected amount of managed chunks in this dimension
+     */
+    public static void ensureCapacity(int dimension, int expected) {
+        MANAGERS.ensureCapacity(dimension, expected);
+        ZONE_INSTANCES.ensureCapacity(dimension, expected);
+    }
+
+    /**
+     * Calls the visitor for each managed chunk with its {@link ZoneInstance}.
+     * The managers must not be registered or unregistered during the
+     * iteration.
+     * 
+     * @param visitor
+     *            The visitor
+     */
+    public static void forEachZoneInstance(ClaimIndex.Visitor<ZoneInstance> visitor) {
+        ZONE_INSTANCES.forEach(visitor);
     }
 
     /**
@@ -157,8 +377,24 @@ public class EventHandlerChunk {
      * @return the associated {@link IChunkManager}, can be null
      */
     public static IChunkManager getManagerFor(World world, BlockPos pos) {
-        return getManagerFor(DimensionalPosition.from(world, pos));
+        return getManagerFor(world.provider.getDimension(), pos.getX(), pos.getZ());
+    }
 
+    /**
+     * Returns the manager of the chunk containing the given block. The chunk
+     * is computed from the coordinates, the world isn't accessed so it can't
+     * load or generate a chunk.
+     * 
+     * @param dimension
+     *            The dimension of the block
+     * @param blockX
+     *            The x coordinate of the block
+     * @param blockZ
+     *            The z coordinate of the block
+     * @return the associated {@link IChunkManager}, can be null
+     */
+    public static IChunkManager getManagerFor(int dimension, int blockX, int blockZ) {
+        return MANAGERS.get(dimension, blockX >> 4, blockZ >> 4);
     }
 
     /**
@@ -173,14 +409,46 @@ public class EventHandlerChunk {
     }
 
     /**
-     * Returns the manager of the chunk where the entity is placed.
+     * The manager of the chunk at the given chunk coordinates.
+     * 
+     * @param dimension
+     *            The dimension of the chunk
+     * @param chunkX
+     *            The x coordinate of the chunk
+     * @param chunkZ
+     *            The z coordinate of the chunk
+     * @return the associated {@link IChunkManager}, can be null
+     */
+    public static IChunkManager getManagerForChunk(int dimension, int chunkX, int chunkZ) {
+        return MANAGERS.get(dimension, chunkX, chunkZ);
+    }
+
+    /**
+     * Returns the manager of the chunk where the entity is placed. The manager
+     * of the chunk of a player is cached in his {@link PlayerData}.
      * 
      * @param entity
      *            The entity in the world
      * @return the associated {@link IChunkManager}, can be null
      */
     public static IChunkManager getManagerFor(Entity entity) {
-        return getManagerFor(entity.getEntityWorld(), entity.getPosition());
+        final int dimension = entity.getEntityWorld().provider.getDimension();
+        final int chunkX = MathHelper.floor(entity.posX) >> 4;
+        final int chunkZ = MathHelper.floor(entity.posZ) >> 4;
+        if (entity instanceof EntityPlayer) {
+            final PlayerData data = PlayerData.get((EntityPlayer) entity);
+            if (data != null)
+                return getManagerFor(data, dimension, chunkX, chunkZ);
+        }
+        return getManagerForChunk(dimension, chunkX, chunkZ);
+    }
+
+    private static IChunkManager getManagerFor(PlayerData data, int dimension, int chunkX, int chunkZ) {
+        if (data.isManagerCached(managersVersion, dimension, chunkX, chunkZ))
+            return data.getManager();
+        final IChunkManager manager = getManagerForChunk(dimension, chunkX, chunkZ);
+        data.setManager(manager, managersVersion, dimension, chunkX, chunkZ);
+        return manager;
     }
 
     /**
@@ -188,11 +456,11 @@ public class EventHandlerChunk {
      */
     @SubscribeEvent
     public static void playerLoggedIn(PlayerLoggedInEvent event) {
-        for(DimensionalPosition pos : ZONE_INSTANCES.keySet()) {
-            ZoneInstance instance = ZONE_INSTANCES.get(pos);
-            IChunkManager manager = MANAGERS.get(pos);
-            ModNetwork.NETWORK.sendTo(new PacketUpdateChunkDatas(manager, pos, instance.getZoneName()), (EntityPlayerMP) event.player);
-        }
+        final EntityPlayerMP player = (EntityPlayerMP) event.player;
+        ZONE_INSTANCES.forEach((dim, x, z, instance) -> {
+            IChunkManager manager = MANAGERS.get(dim, x, z);
+            ModNetwork.NETWORK.sendTo(new PacketUpdateChunkDatas(manager, new DimensionalPosition(new ChunkPos(x, z), dim), instance.getZoneName()), player);
+        });
     }
 
     /**
@@ -200,6 +468,8 @@ public class EventHandlerChunk {
      */
     @SubscribeEvent
     public static void onBreakBlock(BreakEvent event) {
+        if (!isHandled(EnumChunkCallback.BREAK_BLOCK))
+            return;
         final IChunkManager manager = getManagerFor(event.getWorld(), event.getPos());
         if (manager != null) {
             manager.onBreakBlock(event);
@@ -211,6 +481,8 @@ public class EventHandlerChunk {
      */
     @SubscribeEvent
     public static void onPlaceBlock(PlaceEvent event) {
+        if (!isHandled(EnumChunkCallback.PLACE_BLOCK))
+            return;
         final IChunkManager manager = getManagerFor(event.getWorld(), event.getPos());
         if (manager != null) {
             manager.onPlaceBlock(event);
@@ -222,28 +494,124 @@ public class EventHandlerChunk {
     }
 
     /**
-     * Each block is sended to the attached manager.
+     * Each block is sended to the attached manager. The affected blocks are
+     * reordered so the blocks of each managed chunk are contiguous, then each
+     * manager receives a view of its part of the list, so the blocks it
+     * removes are directly removed from the explosion.
      */
     @SubscribeEvent
     public static void onExplosion(ExplosionEvent.Detonate event) {
-        HashMap<DimensionalPosition, List<BlockPos>> blocks = new HashMap<DimensionalPosition, List<BlockPos>>();
-        for(BlockPos pos : event.getAffectedBlocks()) {
-            DimensionalPosition dimPos = DimensionalPosition.from(event.getWorld(), pos);
-            List<BlockPos> positions = blocks.get(dimPos);
-            if (positions == null) {
-                positions = new ArrayList<BlockPos>();
-                blocks.put(dimPos, positions);
+        if (!isHandled(EnumChunkCallback.BLOCKS_EXPLODE))
+            return;
+        final ChunkMap<IChunkManager> managers = MANAGERS.getDimension(event.getWorld().provider.getDimension());
+        final List<BlockPos> affected = event.getAffectedBlocks();
+        if (managers == null || managers.isEmpty() || !touchesManagedChunk(managers, affected))
+            return;
+
+        final int size = affected.size();
+        final BlockPos[] blocks = affected.toArray(new BlockPos[size]);
+        final int[] groupOf = new int[size];
+        final ChunkMap<ExplodedChunk> chunks = new ChunkMap<ExplodedChunk>();
+        final ArrayList<ExplodedChunk> groups = new ArrayList<ExplodedChunk>();
+        int unmanaged = 0;
+
+        // Assigns each block to the group of its chunk
+        ExplodedChunk last = null;
+        long lastKey = 0;
+        for(int i = 0; i < size; i++) {
+            final long key = ChunkMap.key(blocks[i].getX() >> 4, blocks[i].getZ() >> 4);
+            if (last == null || key != lastKey) {
+                last = chunks.get(key);
+                if (last == null) {
+                    final IChunkManager manager = managers.get(key);
+                    if (manager == null) {
+                        last = ExplodedChunk.UNMANAGED;
+                    } else {
+                        last = new ExplodedChunk(manager, groups.size());
+                        groups.add(last);
+                    }
+                    chunks.put(key, last);
+                }
+                lastKey = key;
             }
-            positions.add(pos);
+            groupOf[i] = last.group;
+            if (last == ExplodedChunk.UNMANAGED)
+                unmanaged++;
+            else
+                last.count++;
         }
-        for(Entry<DimensionalPosition, List<BlockPos>> entry : blocks.entrySet()) {
-            IChunkManager manager = getManagerFor(entry.getKey());
-            if (manager != null) {
-                event.getAffectedBlocks().removeAll(entry.getValue());
-                manager.onBlocksExplode(event.getWorld(), entry.getValue());
-                event.getAffectedBlocks().addAll(entry.getValue());
+
+        // Unmanaged blocks first, then each managed chunk
+        int offset = unmanaged;
+        for(ExplodedChunk chunk : groups) {
+            chunk.start = chunk.cursor = offset;
+            offset += chunk.count;
+        }
+        final BlockPos[] sorted = new BlockPos[size];
+        int cursor = 0;
+        for(int i = 0; i < size; i++) {
+            if (groupOf[i] < 0)
+                sorted[cursor++] = blocks[i];
+            else
+                sorted[groups.get(groupOf[i]).cursor++] = blocks[i];
+        }
+        affected.clear();
+        affected.addAll(Arrays.asList(sorted));
+
+        // From the last to the first, removals only shift the groups already
+        // handled
+        for(int g = groups.size() - 1; g >= 0; g--) {
+            final ExplodedChunk chunk = groups.get(g);
+            chunk.manager.onBlocksExplode(event.getWorld(), affected.subList(chunk.start, chunk.start + chunk.count));
+        }
+    }
+
+    /**
+     * Indicates if at least one of the blocks is in a managed chunk.
+     * Consecutive blocks are often in the same chunk, so the last chunk is
+     * remembered to avoid probing the index again.
+     * 
+     * @param managers
+     *            The managers of the dimension
+     * @param blocks
+     *            The positions of the blocks
+     * @return true if a block is in a managed chunk
+     */
+    private static boolean touchesManagedChunk(ChunkMap<IChunkManager> managers, List<BlockPos> blocks) {
+        boolean first = true;
+        long lastKey = 0;
+        for(BlockPos pos : blocks) {
+            final long key = ChunkMap.key(pos.getX() >> 4, pos.getZ() >> 4);
+            if (first || key != lastKey) {
+                if (managers.containsKey(key))
+                    return true;
+                first = false;
+                lastKey = key;
             }
         }
+        return false;
+    }
+
+    /**
+     * A chunk hit by an explosion and the part of the affected blocks which
+     * belongs to it.
+     */
+    private static final class ExplodedChunk {
+
+        /** Shared by all the chunks without manager */
+        private static final ExplodedChunk UNMANAGED = new ExplodedChunk(null, -1);
+
+        private final IChunkManager        manager;
+        private final int                  group;
+        private int                        count;
+        private int                        start;
+        private int                        cursor;
+
+        private ExplodedChunk(IChunkManager manager, int group) {
+            this.manager = manager;
+            this.group = group;
+        }
+
     }
 
     /**
@@ -251,7 +619,9 @@ public class EventHandlerChunk {
      */
     @SubscribeEvent
     public static void onEntityHurt(LivingHurtEvent event) {
-        final IChunkManager manager = MANAGERS.get(DimensionalPosition.from(event.getEntity()));
+        if (!isHandled(EnumChunkCallback.ENTITY_HURT))
+            return;
+        final IChunkManager manager = getManagerFor(event.getEntity());
         if (manager != null) {
             manager.onEntityHurt(event);
         }
@@ -262,7 +632,9 @@ public class EventHandlerChunk {
      */
     @SubscribeEvent
     public static void onPlayerRightClickBlock(RightClickBlock event) {
-        final IChunkManager manager = getManagerFor(DimensionalPosition.from(event.getWorld(), event.getPos()));
+        if (!isHandled(EnumChunkCallback.RIGHT_CLICK_BLOCK))
+            return;
+        final IChunkManager manager = getManagerFor(event.getWorld(), event.getPos());
         if (manager != null) {
             manager.onPlayerRightClickBlock(event);
         }
@@ -273,6 +645,8 @@ public class EventHandlerChunk {
      */
     @SubscribeEvent
     public static void onPlayerRightClickEntity(EntityInteract event) {
+        if (!isHandled(EnumChunkCallback.RIGHT_CLICK_ENTITY))
+            return;
         final IChunkManager manager = getManagerFor(event.getTarget());
         if (manager != null) {
             manager.onPlayerRightClickEntity(event);
@@ -284,6 +658,8 @@ public class EventHandlerChunk {
      */
     @SubscribeEvent
     public static void onPlayerRightClickItem(RightClickItem event) {
+        if (!isHandled(EnumChunkCallback.RIGHT_CLICK_ITEM))
+            return;
         final IChunkManager manager = getManagerFor(event.getEntity());
         if (manager != null) {
             manager.onPlayerRightClickItem(event);
@@ -295,6 +671,8 @@ public class EventHandlerChunk {
      */
     @SubscribeEvent
     public static void onEntityJoin(EntityJoinWorldEvent event) {
+        if (!isHandled(EnumChunkCallback.ENTITY_JOIN))
+            return;
         final IChunkManager manager = getManagerFor(event.getEntity());
         if (manager != null) {
             manager.onEntityJoin(event);
@@ -306,6 +684,8 @@ public class EventHandlerChunk {
      */
     @SubscribeEvent
     public static void onEnchantmentLevelSet(EnchantmentLevelSetEvent event) {
+        if (!isHandled(EnumChunkCallback.ENCHANTMENT_LEVEL_SET))
+            return;
         IChunkManager manager = getManagerFor(event.getWorld(), event.getPos());
         if (manager != null) {
             manager.onEnchantmentLevelSet(event);
@@ -317,7 +697,16 @@ public class EventHandlerChunk {
      */
     @SubscribeEvent
     public static void onEnteringChunk(EntityEvent.EnteringChunk event) {
-        refreshPlayerDisplay(event.getEntity(), new DimensionalPosition(new ChunkPos(event.getNewChunkX(), event.getNewChunkZ()), event.getEntity().getEntityWorld().provider.getDimension()));
+        if (event.getEntity() instanceof EntityPlayer) {
+            final int dimension = event.getEntity().getEntityWorld().provider.getDimension();
+            final PlayerData data = PlayerData.get((EntityPlayer) event.getEntity());
+            final IChunkManager manager;
+            if (data != null)
+                manager = getManagerFor(data, dimension, event.getNewChunkX(), event.getNewChunkZ());
+            else
+                manager = getManagerForChunk(dimension, event.getNewChunkX(), event.getNewChunkZ());
+            refreshPlayerDisplay(event.getEntity(), manager);
+        }
     }
 
     /**
@@ -326,13 +715,12 @@ public class EventHandlerChunk {
      * 
      * @param entity
      *            The entity to send the message
-     * @param position
-     *            The position of the chunk
+     * @param manager
+     *            The manager of the chunk the entity is in, can be null
      */
-    private static void refreshPlayerDisplay(Entity entity, DimensionalPosition position) {
+    private static void refreshPlayerDisplay(Entity entity, IChunkManager manager) {
         UUID uuid = entity.getUniqueID();
         ITextComponent message;
-        IChunkManager manager = getManagerFor(position);
         if (manager != null) {
             message = manager.getName();
         } else {
@@ -346,7 +734,7 @@ public class EventHandlerChunk {
 
     /**
      * Invokes
-     * {@link EventHandlerChunk#refreshPlayerDisplay(Entity, DimensionalPosition)}
+     * {@link EventHandlerChunk#refreshPlayerDisplay(Entity, IChunkManager)}
      * for each entity in the given chunk.
      * 
      * @param position
@@ -356,10 +744,11 @@ public class EventHandlerChunk {
         World world = ServerUtils.getServer().getWorld(position.getDimension());
         Chunk chunk = world.getChunkFromChunkCoords(position.getPos().x, position.getPos().z);
         ClassInheritanceMultiMap<Entity>[] list = chunk.getEntityLists();
+        IChunkManager manager = getManagerFor(position);
         for(int i = 0; i < list.length; i++) {
             for(Entity entity : list[i]) {
                 if (entity instanceof EntityPlayer) {
-                    refreshPlayerDisplay(entity, position);
+                    refreshPlayerDisplay(entity, manager);
                 }
             }
         }
@@ -396,19 +785,49 @@ public class EventHandlerChunk {
      */
     @SubscribeEvent
     public static void onItemToss(ItemTossEvent event) {
+        if (!isHandled(EnumChunkCallback.ITEM_TOSS))
+            return;
         IChunkManager manager = getManagerFor(event.getEntity());
         if (manager != null) {
             manager.onItemToss(event);
         }
     }
 
+    /**
+     * Sended to the manager of the chunk of the entity using the item.
+     */
+    @SubscribeEvent
+    public static void onEntityUseItem(LivingEntityUseItemEvent event) {
+        if (!isHandled(EnumChunkCallback.ENTITY_USE_ITEM))
+            return;
+        final IChunkManager manager = getManagerFor(event.getEntity());
+        if (manager != null) {
+            manager.onEntityUseItem(event);
+        }
+    }
+
+    /**
+     * Sended to the manager of the chunk of the attacked entity.
+     */
+    @SubscribeEvent
+    public static void onPlayerAttack(AttackEntityEvent event) {
+        if (!isHandled(EnumChunkCallback.PLAYER_ATTACK))
+            return;
+        final IChunkManager manager = getManagerFor(event.getTarget());
+        if (manager != null) {
+            manager.onPlayerAttack(event);
+        }
+    }
+
     /**
      * Sended to the attached manager.
      */
     @SubscribeEvent
     public static void onBucketFill(FillBucketEvent event) {
+        if (!isHandled(EnumChunkCallback.BUCKET_FILL))
+            return;
         if (event.getTarget() != null) {
-            IChunkManager manager = getManagerFor(DimensionalPosition.from(event.getWorld(), event.getTarget().getBlockPos()));
+            IChunkManager manager = getManagerFor(event.getWorld(), event.getTarget().getBlockPos());
             if (manager != null) {
                 manager.onBucketFill(event);
             }
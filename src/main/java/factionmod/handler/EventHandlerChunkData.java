@@ -0,0 +1,170 @@
+package factionmod.handler;
+
+import java.util.ArrayList;
+
+import akka.japi.Pair;
+import factionmod.FactionMod;
+import factionmod.config.ConfigGeneral;
+import factionmod.data.FactionModDatas;
+import factionmod.faction.Faction;
+import factionmod.manager.IChunkManager;
+import factionmod.manager.instanciation.ChunkManagerCreator;
+import factionmod.manager.instanciation.ZoneInstance;
+import factionmod.utils.DimensionalPosition;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraftforge.common.DimensionManager;
+import net.minecraftforge.common.util.Constants.NBT;
+import net.minecraftforge.event.world.ChunkDataEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.Mod.EventBusSubscriber;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+
+/**
+ * Stores the claims of the factions in the datas of the chunks when the option
+ * "claims_in_chunks" is enabled. The manager of a claimed chunk is kept in
+ * memory only while the chunk is loaded, each {@link Faction} still knows all
+ * its claims. The zones which don't belong to a faction are few, they always
+ * stay in memory.
+ * <p>
+ * When a chunk is loaded, its claim is accepted only if the faction still
+ * claims it : the chunk may have been unclaimed while it was unloaded.
+ * <p>
+ * The option can be disabled at any time : when the server starts with the
+ * option disabled, the chunks of the factions which aren't in the index are
+ * claimed again and saved in the storage, see
+ * {@link EventHandlerChunkData#restoreClaims()}.
+ *
+ * @author BrokenSwing
+ *
+ */
+@EventBusSubscriber(modid = FactionMod.MODID)
+public class EventHandlerChunkData {
+
+    private static final String TAG = FactionMod.MODID + ":zone";
+
+    private static boolean isEnabled() {
+        return ConfigGeneral.getBool("claims_in_chunks");
+    }
+
+    private static boolean isStoredInChunk(ZoneInstance instance) {
+        return "faction".equals(instance.getZoneName()) && instance.getArgs().length > 0;
+    }
+
+    /**
+     * Marks the chunk as modified if it's loaded, so its claim is written in
+     * its datas even if nothing else changed in the chunk.
+     * 
+     * @param position
+     *            The position of the chunk of which the claim changed
+     */
+    public static void onClaimModified(DimensionalPosition position) {
+        if (!isEnabled())
+            return;
+        final World world = DimensionManager.getWorld(position.getDimension());
+        if (world != null) {
+            final Chunk chunk = world.getChunkProvider().getLoadedChunk(position.getPos().x, position.getPos().z);
+            if (chunk != null)
+                chunk.markDirty();
+        }
+    }
+
+    /**
+     * Registers the claims of the factions which aren't in the index, called
+     * when the datas are loaded. The claims of the chunks unloaded while the
+     * option was enabled are only in the datas of these chunks, they are
+     * restored from the chunks known by their faction and marked as modified,
+     * so they are saved in the storage again.
+     */
+    public static void restoreClaims() {
+        if (isEnabled())
+            return;
+        int restored = 0;
+        for(Faction faction : EventHandlerFaction.getFactions().values()) {
+            Pair<IChunkManager, ZoneInstance> pair = null;
+            for(DimensionalPosition position : faction.getChunks()) {
+                if (EventHandlerChunk.getZoneInstance(position.getDimension(), position.getPos().x, position.getPos().z) != null)
+                    continue;
+                if (pair == null)
+                    pair = ChunkManagerCreator.createChunkHandler("faction", faction.getName());
+                if (pair == null)
+                    break;
+                EventHandlerChunk.registerChunkManager(pair.first(), position, pair.second(), false);
+                restored++;
+            }
+        }
+        if (restored > 0)
+            FactionMod.getLogger().info("Restored " + restored + " claims which were saved in the chunks");
+    }
+
+    @SubscribeEvent
+    public static void onChunkSave(ChunkDataEvent.Save event) {
+        if (!isEnabled() || event.getWorld().isRemote)
+            return;
+        final Chunk chunk = event.getChunk();
+        final int dimension = event.getWorld().provider.getDimension();
+        final ZoneInstance instance = EventHandlerChunk.getZoneInstance(dimension, chunk.x, chunk.z);
+        if (instance == null || !isStoredInChunk(instance))
+            return;
+        event.getData().setTag(TAG, instance.serializeNBT());
+        // The chunk is saved because it's unloaded
+        if (!chunk.isLoaded()) {
+            EventHandlerChunk.unloadChunkManager(dimension, chunk.x, chunk.z);
+            FactionModDatas.forgetClaim(new DimensionalPosition(chunk.getPos(), dimension));
+        }
+    }
+
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkDataEvent.Load event) {
+        if (!isEnabled() || event.getWorld().isRemote)
+            return;
+        final Chunk chunk = event.getChunk();
+        final int dimension = event.getWorld().provider.getDimension();
+        final ZoneInstance resident = EventHandlerChunk.getZoneInstance(dimension, chunk.x, chunk.z);
+        if (resident != null) {
+            // Claimed before the option was enabled, the claim has to be
+            // written in the chunk before it's unloaded
+            if (!event.getData().hasKey(TAG, NBT.TAG_COMPOUND) && isStoredInChunk(resident))
+                chunk.markDirty();
+            return;
+        }
+        if (!event.getData().hasKey(TAG, NBT.TAG_COMPOUND))
+            return;
+        final ZoneInstance read = new ZoneInstance((NBTTagCompound) event.getData().getTag(TAG));
+        if (!isStoredInChunk(read))
+            return;
+        final Faction faction = EventHandlerFaction.getFaction(read.getArgs()[0]);
+        if (faction == null || !faction.isChunkClaimed(new DimensionalPosition(chunk.getPos(), dimension)))
+            return;
+        final Pair<IChunkManager, ZoneInstance> pair = ChunkManagerCreator.createChunkHandler(read.getZoneName(), read.getArgs());
+        if (pair != null)
+            EventHandlerChunk.loadChunkManager(pair.first(), pair.second(), dimension, chunk.x, chunk.z);
+    }
+
+    /**
+     * The chunks of an unloaded world are saved but not marked as unloaded,
+     * the claims of the loaded chunks are forgotten here. The claimed chunks
+     * are marked as modified when loaded, so their claims were saved. The
+     * chunks which weren't loaded keep their claims in memory, their datas
+     * may not contain them yet.
+     */
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        if (!isEnabled() || event.getWorld().isRemote)
+            return;
+        final World world = event.getWorld();
+        final int dimension = world.provider.getDimension();
+        final ArrayList<ChunkPos> unloaded = new ArrayList<ChunkPos>();
+        EventHandlerChunk.forEachZoneInstance((dim, x, z, instance) -> {
+            if (dim == dimension && isStoredInChunk(instance) && world.getChunkProvider().getLoadedChunk(x, z) != null)
+                unloaded.add(new ChunkPos(x, z));
+        });
+        for(ChunkPos pos : unloaded) {
+            EventHandlerChunk.unloadChunkManager(dimension, pos.x, pos.z);
+            FactionModDatas.forgetClaim(new DimensionalPosition(pos, dimension));
+        }
+    }
+
+}
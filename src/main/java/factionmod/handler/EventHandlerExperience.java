@@ -1,9 +1,12 @@
 package factionmod.handler;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 import factionmod.FactionMod;
-import factionmod.api.FactionModAPI.FactionAPI;
 import factionmod.config.ConfigExperience;
 import factionmod.config.ConfigLang;
 import factionmod.event.FactionLevelUpEvent;
@@ -11,13 +14,13 @@ import factionmod.faction.Faction;
 import factionmod.faction.Levels;
 import factionmod.utils.MessageHelper;
 import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityList;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraftforge.event.entity.living.LivingDeathEvent;
 import net.minecraftforge.fml.common.Mod.EventBusSubscriber;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
-import net.minecraftforge.fml.common.registry.EntityEntry;
-import net.minecraftforge.fml.common.registry.ForgeRegistries;
-import net.minecraftforge.registries.IForgeRegistry;
+import net.minecraftforge.fml.common.gameevent.TickEvent.Phase;
+import net.minecraftforge.fml.common.gameevent.TickEvent.ServerTickEvent;
 
 /**
  * It handles everything which is relative to the experience of the factions.
@@ -28,7 +31,8 @@ import net.minecraftforge.registries.IForgeRegistry;
 @EventBusSubscriber(modid = FactionMod.MODID)
 public class EventHandlerExperience {
 
-    private static final IForgeRegistry<EntityEntry> ENTITIES = ForgeRegistries.ENTITIES;
+    /** The experience won by each faction during the current tick */
+    private static final IdentityHashMap<Faction, PendingExperience> PENDING = new IdentityHashMap<Faction, PendingExperience>();
 
     /**
      * Used to give experience to factions when their members kills monsters or
@@ -37,33 +41,35 @@ public class EventHandlerExperience {
     @SubscribeEvent
     public static void playerKillEntity(final LivingDeathEvent event) {
         if (event.getSource().getDamageType().equals("player")) {
+            final Entity target = event.getEntity();
+            // Most of the killed entities don't give any experience
+            final int killExp = target instanceof EntityPlayerMP ? 0 : ConfigExperience.getExpForKill(target.getClass());
+            if (killExp == 0 && !(target instanceof EntityPlayerMP))
+                return;
             final EntityPlayerMP player = (EntityPlayerMP) event.getSource().getTrueSource();
-            if (!EventHandlerFaction.hasUserFaction(player.getUniqueID()))
+            final Faction faction = EventHandlerFaction.getUserFaction(player.getUniqueID());
+            if (faction == null)
                 return;
-            final Faction faction = EventHandlerFaction.getFaction(EventHandlerFaction.getFactionOf(player.getUniqueID()));
-            final Entity target = event.getEntity();
             if (target instanceof EntityPlayerMP) {
-                if (EventHandlerFaction.hasUserFaction(target.getUniqueID())) {
-                    FactionAPI.getFactionOf(target.getUniqueID()).damageFaction(1);
+                final Faction targetFaction = EventHandlerFaction.getUserFaction(target.getUniqueID());
+                if (targetFaction != null) {
+                    targetFaction.damageFaction(1);
                     final int exp = ConfigExperience.getExpFor("kill_enemy");
                     addExp(faction, exp, player.getUniqueID());
                     FactionMod.getLogger().debug("The player " + player.getName() + " killed an enemy and earned " + exp + " experience for faction " + faction.getName());
                 }
             } else {
-                ENTITIES.getEntries().forEach(entry -> {
-                    if (entry.getValue().getEntityClass().equals(target.getClass())) {
-                        final int exp = ConfigExperience.getExpFor("kill_" + entry.getKey().toString());
-                        addExp(faction, exp, player.getUniqueID());
-                        FactionMod.getLogger().debug("The player " + player.getName() + " killed " + entry.getKey() + " and earned " + exp + " experience for faction " + faction.getName());
-                    }
-                });
+                addExp(faction, killExp, player.getUniqueID());
+                if (FactionMod.getLogger().isDebugEnabled())
+                    FactionMod.getLogger().debug("The player " + player.getName() + " killed " + EntityList.getKey(target) + " and earned " + killExp + " experience for faction " + faction.getName());
             }
         }
     }
 
     /**
-     * Adds the specified amount of experience to the specified faction. If the
-     * experience increased, it will update the modded clients.
+     * Adds the specified amount of experience to the specified faction. The
+     * experience won during a tick is added to the faction at the end of the
+     * tick, so the levels are computed once per tick.
      * 
      * @param faction
      *            The faction
@@ -74,7 +80,24 @@ public class EventHandlerExperience {
      */
     public static void addExp(final Faction faction, final int amount, final UUID member) {
         if (amount > 0) {
-            faction.increaseExp(amount, member);
+            PENDING.computeIfAbsent(faction, f -> new PendingExperience()).add(amount, member);
+        }
+    }
+
+    /**
+     * Adds the experience won during the tick to the factions.
+     */
+    @SubscribeEvent
+    public static void onServerTick(final ServerTickEvent event) {
+        if (event.phase != Phase.END || PENDING.isEmpty())
+            return;
+        final ArrayList<Map.Entry<Faction, PendingExperience>> pending = new ArrayList<Map.Entry<Faction, PendingExperience>>(PENDING.entrySet());
+        PENDING.clear();
+        for(Map.Entry<Faction, PendingExperience> entry : pending) {
+            final Faction faction = entry.getKey();
+            // The faction may have been removed during the tick
+            if (EventHandlerFaction.getFaction(faction.getName()) == faction)
+                faction.applyExperience(entry.getValue().total, entry.getValue().members);
         }
     }
 
@@ -83,7 +106,23 @@ public class EventHandlerExperience {
      */
     @SubscribeEvent
     public static void onLevelUp(final FactionLevelUpEvent event) {
-        EventHandlerFaction.broadcastToFaction(event.getFaction(), String.format(ConfigLang.translate("faction.levelup"), event.getFaction().getLevel(), Levels.getMaximumChunksForLevel(event.getFaction().getLevel())), MessageHelper.INFO);
+        EventHandlerFaction.broadcastToFaction(event.getFaction(), String.format(ConfigLang.translate("faction.levelup"), event.getFaction().getLevel(), Levels.getMaximumChunksForLevel(event.getFaction(), event.getFaction().getLevel())), MessageHelper.INFO);
+    }
+
+    /**
+     * The experience won by a faction, and by each of its members.
+     */
+    private static final class PendingExperience {
+
+        private int                          total   = 0;
+        private final HashMap<UUID, Integer> members = new HashMap<UUID, Integer>(4);
+
+        private void add(int amount, UUID member) {
+            this.total += amount;
+            if (member != null)
+                this.members.merge(member, amount, Integer::sum);
+        }
+
     }
 
 }
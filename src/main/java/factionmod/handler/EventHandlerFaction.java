@@ -1,6 +1,7 @@
 package factionmod.handler;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
@@ -16,6 +17,7 @@ import com.google.common.collect.Lists;
 
 import akka.japi.Pair;
 import factionmod.FactionMod;
+import factionmod.capability.PlayerData;
 import factionmod.command.utils.UUIDHelper;
 import factionmod.config.ConfigGeneral;
 import factionmod.config.ConfigLang;
@@ -47,6 +49,7 @@ import factionmod.utils.DimensionalPosition;
 import factionmod.utils.MessageHelper;
 import factionmod.utils.ServerUtils;
 import factionmod.utils.TeleportationHelper;
+import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.server.management.PlayerList;
@@ -59,12 +62,15 @@ import net.minecraft.util.text.TextFormatting;
 import net.minecraft.util.text.event.ClickEvent;
 import net.minecraft.util.text.event.ClickEvent.Action;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.AttachCapabilitiesEvent;
 import net.minecraftforge.event.entity.living.LivingAttackEvent;
 import net.minecraftforge.event.entity.living.LivingHurtEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent.Clone;
 import net.minecraftforge.event.entity.player.PlayerEvent.NameFormat;
 import net.minecraftforge.fml.common.Mod.EventBusSubscriber;
 import net.minecraftforge.fml.common.eventhandler.EventPriority;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerLoggedInEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent.ServerTickEvent;
 
 /**
@@ -77,8 +83,8 @@ import net.minecraftforge.fml.common.gameevent.TickEvent.ServerTickEvent;
 @EventBusSubscriber(modid = FactionMod.MODID)
 public class EventHandlerFaction {
 
-    private static final HashMap<String, Faction> factions      = new HashMap<String, Faction>();
-    private static final HashMap<UUID, String>    usersFactions = new HashMap<UUID, String>();
+    private static HashMap<String, Faction> factions      = new HashMap<String, Faction>();
+    private static HashMap<UUID, Faction>   usersFactions = new HashMap<UUID, Faction>();
 
     // ---------- Fonctions modifying directly mappings --------------
 
@@ -86,24 +92,59 @@ public class EventHandlerFaction {
 
     public static void addFaction(Faction faction) {
         factions.put(faction.getName().toLowerCase(), faction);
-        FactionModDatas.save();
+        FactionModDatas.save(faction);
+    }
+
+    /**
+     * Registers the factions read when the server starts, and their members.
+     * The mappings are sized once, the factions aren't marked as modified and
+     * the names of the players aren't refreshed, no player is connected yet.
+     * 
+     * @param loaded
+     *            The loaded factions
+     */
+    public static void loadFactions(Collection<Faction> loaded) {
+        int membersCount = 0;
+        for(Faction faction : loaded) {
+            membersCount += faction.getMembers().size();
+        }
+        if (factions.isEmpty())
+            factions = new HashMap<String, Faction>(loaded.size() * 4 / 3 + 1);
+        if (usersFactions.isEmpty())
+            usersFactions = new HashMap<UUID, Faction>(membersCount * 4 / 3 + 1);
+        for(Faction faction : loaded) {
+            factions.put(faction.getName().toLowerCase(), faction);
+            for(Member member : faction.getMembers()) {
+                usersFactions.put(member.getUUID(), faction);
+            }
+        }
     }
 
     private static void removeFaction(Faction faction) {
         factions.remove(faction.getName().toLowerCase());
-        FactionModDatas.save();
+        ChunkManagerCreator.releaseChunkHandler("faction", faction.getName());
+        FactionModDatas.save(faction);
     }
 
     public static void addUserToFaction(Faction faction, UUID user) {
-        usersFactions.put(user, faction.getName().toLowerCase());
+        usersFactions.put(user, faction);
+        setPlayerDataFaction(user, faction);
         refreshDisplayNameOf(user);
-        FactionModDatas.save();
+    }
+
+    private static void setPlayerDataFaction(UUID user, Faction faction) {
+        EntityPlayerMP player = ServerUtils.getPlayer(user);
+        if (player != null) {
+            PlayerData data = PlayerData.get(player);
+            if (data != null)
+                data.setFaction(faction);
+        }
     }
 
     private static void removeUser(UUID user) {
         usersFactions.remove(user);
+        setPlayerDataFaction(user, null);
         refreshDisplayNameOf(user);
-        FactionModDatas.save();
     }
 
     // ------------ Fonctions returning informations about Maps ------------
@@ -151,6 +192,17 @@ public class EventHandlerFaction {
         return factions.get(factionName.toLowerCase());
     }
 
+    /**
+     * Returns the faction of a player.
+     * 
+     * @param uuid
+     *            The UUID of the player
+     * @return the faction or null if the player isn't in a faction
+     */
+    public static Faction getUserFaction(UUID uuid) {
+        return usersFactions.get(uuid);
+    }
+
     /**
      * Indicates the name of the faction of a player. It will return an empty
      * string if the player isn't in a faction.
@@ -161,12 +213,81 @@ public class EventHandlerFaction {
      *         a faction
      */
     public static String getFactionOf(UUID uuid) {
-        String name = usersFactions.get(uuid);
-        return name != null ? name : "";
+        Faction faction = usersFactions.get(uuid);
+        return faction != null ? faction.getName() : "";
+    }
+
+    /**
+     * Indicates if both players are in the same faction.
+     * 
+     * @param first
+     *            The UUID of the first player
+     * @param second
+     *            The UUID of the second player
+     * @return true if the players are in the same faction
+     */
+    public static boolean areInSameFaction(UUID first, UUID second) {
+        Faction faction = usersFactions.get(first);
+        return faction != null && faction == usersFactions.get(second);
+    }
+
+    /**
+     * Indicates if both players are in the same faction. It reads the
+     * {@link PlayerData} of the players when they have one.
+     * 
+     * @param first
+     *            The first player
+     * @param second
+     *            The second player
+     * @return true if the players are in the same faction
+     */
+    public static boolean areInSameFaction(EntityPlayer first, EntityPlayer second) {
+        PlayerData firstData = PlayerData.get(first);
+        PlayerData secondData = PlayerData.get(second);
+        if (firstData == null || secondData == null)
+            return areInSameFaction(first.getUniqueID(), second.getUniqueID());
+        return firstData.getFaction() != null && firstData.getFaction() == secondData.getFaction();
     }
 
     // ------------------ EVENT PART -------------------
 
+    /**
+     * Attaches the {@link PlayerData} to the players.
+     * 
+     * @param event
+     */
+    @SubscribeEvent
+    public static void attachPlayerData(AttachCapabilitiesEvent<Entity> event) {
+        if (event.getObject() instanceof EntityPlayerMP) {
+            event.addCapability(PlayerData.KEY, new PlayerData.Provider());
+        }
+    }
+
+    /**
+     * Sets the faction in the {@link PlayerData} of the player logging in.
+     * 
+     * @param event
+     */
+    @SubscribeEvent
+    public static void playerLoggedIn(PlayerLoggedInEvent event) {
+        PlayerData data = PlayerData.get(event.player);
+        if (data != null)
+            data.setFaction(usersFactions.get(event.player.getUniqueID()));
+    }
+
+    /**
+     * Copies the {@link PlayerData} of the player when he respawns.
+     * 
+     * @param event
+     */
+    @SubscribeEvent
+    public static void playerClone(Clone event) {
+        PlayerData original = PlayerData.get(event.getOriginal());
+        PlayerData data = PlayerData.get(event.getEntityPlayer());
+        if (original != null && data != null)
+            data.copyFrom(original);
+    }
+
     /**
      * Used to update the display name. It shows the name of the faction of the
      * player before his name.
@@ -178,9 +299,9 @@ public class EventHandlerFaction {
         if (EventHandlerAdmin.isAdmin((EntityPlayerMP) event.getEntityPlayer())) {
             event.setDisplayname(ConfigLang.translate("admin.prefix") + " " + TextFormatting.RESET + event.getDisplayname());
         }
-        if (hasUserFaction(event.getEntityPlayer().getPersistentID())) {
-            String factionName = getFaction(getFactionOf(event.getEntityPlayer().getUniqueID())).getName();
-            event.setDisplayname("[" + factionName + "] " + event.getDisplayname());
+        Faction faction = getUserFaction(event.getEntityPlayer().getPersistentID());
+        if (faction != null) {
+            event.setDisplayname("[" + faction.getName() + "] " + event.getDisplayname());
         }
         if (event.getUsername().equals("BrokenSwing") && ServerUtils.getServer().isServerInOnlineMode()) {
             event.setDisplayname(TextFormatting.YELLOW + "[Faction's Mod Dev] " + TextFormatting.RESET + event.getDisplayname());
@@ -198,9 +319,7 @@ public class EventHandlerFaction {
             if (event.getEntity() instanceof EntityPlayer && event.getSource().getTrueSource() instanceof EntityPlayer) {
                 EntityPlayer target = (EntityPlayer) event.getEntity();
                 EntityPlayer source = (EntityPlayer) event.getSource().getTrueSource();
-                if (!hasUserFaction(target.getUniqueID()) || !hasUserFaction(source.getUniqueID()))
-                    return;
-                if (getFactionOf(source.getUniqueID()).equalsIgnoreCase(getFactionOf(target.getUniqueID())))
+                if (areInSameFaction(source, target))
                     event.setCanceled(true);
             }
         }
@@ -237,9 +356,7 @@ public class EventHandlerFaction {
             if (event.getEntity() instanceof EntityPlayer && event.getSource().getTrueSource() instanceof EntityPlayer) {
                 EntityPlayer target = (EntityPlayer) event.getEntity();
                 EntityPlayer source = (EntityPlayer) event.getSource().getTrueSource();
-                if (!hasUserFaction(target.getUniqueID()) || !hasUserFaction(source.getUniqueID()))
-                    return;
-                if (getFactionOf(source.getUniqueID()).equalsIgnoreCase(getFactionOf(target.getUniqueID())))
+                if (areInSameFaction(source, target))
                     event.setCanceled(true);
             }
         }
@@ -324,6 +441,7 @@ public class EventHandlerFaction {
         Faction faction = new Faction(name, desc, new Member(owner, Grade.OWNER));
         addFaction(faction);
         addUserToFaction(faction, owner);
+        FactionModDatas.saveNow();
         MinecraftForge.EVENT_BUS.post(new FactionCreatedEvent(faction, owner));
         return new ActionResult<String>(EnumActionResult.SUCCESS, String.format(ConfigLang.translate("faction.create.success"), name));
     }
@@ -367,6 +485,7 @@ public class EventHandlerFaction {
         for(DimensionalPosition position : faction.getChunks()) {
             EventHandlerChunk.unregisterChunkManager(position, true);
         }
+        FactionModDatas.saveNow();
         MinecraftForge.EVENT_BUS.post(new FactionDisbandedEvent.Post(faction, owner));
         return new ActionResult<String>(EnumActionResult.SUCCESS, String.format(ConfigLang.translate("faction.disband.success"), faction.getName()));
     }
@@ -570,7 +689,7 @@ public class EventHandlerFaction {
         IChunkManager manager = EventHandlerChunk.getManagerFor(position);
         if (manager != null)
             return new ActionResult<String>(EnumActionResult.FAIL, ConfigLang.translate("faction.claim.fail.nothere"));
-        if (faction.getChunks().size() >= Levels.getMaximumChunksForLevel(faction.getLevel()))
+        if (faction.getChunkCount() >= Levels.getMaximumChunksForLevel(faction, faction.getLevel()))
             return new ActionResult<String>(EnumActionResult.FAIL, ConfigLang.translate("faction.claim.fail.maxreached"));
         ClaimChunkEvent event = new ClaimChunkEvent(faction, member, position);
         if (MinecraftForge.EVENT_BUS.post(event))
@@ -637,7 +756,7 @@ public class EventHandlerFaction {
             return new ActionResult<String>(EnumActionResult.FAIL, String.format(ConfigLang.translate("player.self.member.isnt"), faction.getName()));
         if (!admin && !faction.getMember(member).hasPermission(EnumPermission.SET_HOME))
             return new ActionResult<String>(EnumActionResult.FAIL, ConfigLang.translate("player.self.permission.hasnt"));
-        if (!faction.getChunks().contains(position.toDimensionnalPosition()))
+        if (!faction.isChunkClaimed(position.toDimensionnalPosition()))
             return new ActionResult<String>(EnumActionResult.FAIL, ConfigLang.translate("faction.chunk.notclaimed"));
         SetHomeEvent event = new SetHomeEvent(faction, member, position);
         if (MinecraftForge.EVENT_BUS.post(event))
@@ -690,8 +809,8 @@ public class EventHandlerFaction {
             list.add(ConfigLang.translate("lang.description") + " : " + faction.getDesc());
         list.add(ConfigLang.translate("lang.members") + " : " + faction.getMembers().size());
         list.add(ConfigLang.translate("lang.level") + " : " + faction.getLevel());
-        list.add(ConfigLang.translate("lang.experience") + " : " + faction.getExp() + "/" + Levels.getExpNeededForLevel(faction.getLevel() + 1));
-        list.add("Chunks : " + faction.getChunks().size() + "/" + Levels.getMaximumChunksForLevel(faction.getLevel()));
+        list.add(ConfigLang.translate("lang.experience") + " : " + faction.getExp() + "/" + Levels.getExpNeededForLevel(faction, faction.getLevel() + 1));
+        list.add("Chunks : " + faction.getChunkCount() + "/" + Levels.getMaximumChunksForLevel(faction, faction.getLevel()));
         list.add(ConfigLang.translate("lang.opened") + " : " + (faction.isOpened() ? ConfigLang.translate("lang.yes") : ConfigLang.translate("lang.no")));
         list.add(ConfigLang.translate("damages") + " : " + faction.getDamages());
         FactionInfoEvent event = new FactionInfoEvent(faction, list);
@@ -898,7 +1017,7 @@ public class EventHandlerFaction {
         Faction faction = getFaction(name);
         if (!admin && !faction.isMember(member))
             return new ActionResult<String>(EnumActionResult.FAIL, String.format(ConfigLang.translate("player.self.member.isnt"), faction.getName()));
-        if (!admin && !faction.getMember(member).getGrade().hasPermission(EnumPermission.SHOW_CHEST))
+        if (!admin && !faction.getMember(member).hasPermission(EnumPermission.SHOW_CHEST))
             return new ActionResult<String>(EnumActionResult.FAIL, ConfigLang.translate("player.self.permission.hasnt"));
         EntityPlayerMP player = ServerUtils.getPlayer(member);
         if (player != null) {
@@ -916,7 +1035,7 @@ public class EventHandlerFaction {
         Faction faction = getFaction(name);
         if (!admin && !faction.isMember(member))
             return new ActionResult<String>(EnumActionResult.FAIL, String.format(ConfigLang.translate("player.self.member.isnt"), faction.getName()));
-        if (!admin && !faction.getMember(member).getGrade().hasPermission(EnumPermission.INVITE_USER))
+        if (!admin && !faction.getMember(member).hasPermission(EnumPermission.INVITE_USER))
             return new ActionResult<String>(EnumActionResult.FAIL, ConfigLang.translate("player.self.permission.hasnt"));
         faction.setRecruitLink(newLink);
         return new ActionResult<String>(EnumActionResult.SUCCESS, ConfigLang.translate("faction.link.recruit.changed"));
@@ -925,23 +1044,7 @@ public class EventHandlerFaction {
     private static boolean isChunkAtEdge(DimensionalPosition position) {
         IChunkManager manager = EventHandlerChunk.getManagerFor(position);
         if (manager instanceof ManagerFaction) {
-            ManagerFaction fManager = (ManagerFaction) manager;
-            int i = 0;
-            int x = position.getPos().x;
-            int z = position.getPos().z;
-            for(DimensionalPosition pos : fManager.getFaction().getChunks()) {
-                if (pos.getDimension() == position.getDimension()) {
-                    int x2 = pos.getPos().x;
-                    int z2 = pos.getPos().z;
-                    if (x2 == x)
-                        if (z2 == z - 1 || z2 == z + 1)
-                            i++;
-                    if (z2 == z)
-                        if (x2 == x - 1 || x2 == x + 1)
-                            i++;
-                }
-            }
-            return i < 4;
+            return ((ManagerFaction) manager).getFaction().isChunkAtEdge(position);
         }
         return false;
     }
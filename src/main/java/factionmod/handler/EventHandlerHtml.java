@@ -75,7 +75,7 @@ public class EventHandlerHtml {
         template = template.replaceAll("%is-opened%", faction.isOpened() ? ConfigLang.translate("lang.yes") : ConfigLang.translate("lang.no"));
         template = template.replaceAll("%faction-level%", "" + faction.getLevel());
         template = template.replaceAll("%faction-experience%", "" + faction.getExp());
-        template = template.replaceAll("%faction-experience-needed%", "" + Levels.getExpNeededForLevel(faction.getLevel() + 1));
+        template = template.replaceAll("%faction-experience-needed%", "" + Levels.getExpNeededForLevel(faction, faction.getLevel() + 1));
         template = template.replaceAll("%faction-damages%", "" + faction.getDamages());
         
         int start = template.indexOf("%start-member%");
@@ -17,33 +17,74 @@ import net.minecraft.util.text.TextComponentString;
 import net.minecraft.world.IInteractionObject;
 import net.minecraftforge.common.util.INBTSerializable;
 
+/**
+ * The chest of a faction. The saved items are kept as NBT until the inventory
+ * is used, most factions don't open their chest while the server is running
+ * so their items are never created. The last serialized compound is reused
+ * until the items are modified.
+ * 
+ * @author BrokenSwing
+ *
+ */
 public class FactionInventory implements IInventory, IInteractionObject, INBTSerializable<NBTTagCompound> {
 
-    private NonNullList<ItemStack> stacks = NonNullList.withSize(27, ItemStack.EMPTY);
+    private static final int      SIZE   = 27;
+
+    /** The items, null until the inventory is used */
+    private NonNullList<ItemStack> stacks = null;
+    /** The last serialized items, null once the items are modified */
+    private NBTTagCompound         saved  = null;
 
     private String                 name;
 
     public FactionInventory(String name) {
         this.name = name;
+        this.stacks = NonNullList.withSize(SIZE, ItemStack.EMPTY);
     }
 
     public FactionInventory(NBTTagCompound nbt) {
         this.deserializeNBT(nbt);
     }
 
+    /**
+     * Returns the items, they are read from the saved compound the first time
+     * this method is called.
+     */
+    private NonNullList<ItemStack> getStacks() {
+        if (this.stacks == null) {
+            this.stacks = NonNullList.withSize(SIZE, ItemStack.EMPTY);
+            // The stacks would share their compound with the saved one, which
+            // can be written by the saving thread
+            ItemStackHelper.loadAllItems(this.saved.copy(), this.stacks);
+        }
+        return this.stacks;
+    }
+
     @Override
     public NBTTagCompound serializeNBT() {
-        NBTTagCompound nbt = new NBTTagCompound();
-        nbt.setString("name", this.name);
-        ItemStackHelper.saveAllItems(nbt, this.stacks);
-        return nbt;
+        // The saved compound is never modified, it can be returned until the
+        // items change
+        if (this.saved == null) {
+            NBTTagCompound nbt = new NBTTagCompound();
+            nbt.setString("name", this.name);
+            ItemStackHelper.saveAllItems(nbt, this.stacks);
+            // The stacks share their compound with the saved one, the copy can
+            // be written by the saving thread
+            this.saved = nbt.copy();
+        }
+        return this.saved;
     }
 
+    /**
+     * Reads the name of the inventory, the items are read when the inventory
+     * is used. It doesn't create any item stack, it can be called from any
+     * thread.
+     */
     @Override
     public void deserializeNBT(NBTTagCompound nbt) {
-        this.stacks = NonNullList.withSize(this.getSizeInventory(), ItemStack.EMPTY);
         this.name = nbt.getString("name");
-        ItemStackHelper.loadAllItems(nbt, this.stacks);
+        this.saved = nbt;
+        this.stacks = null;
     }
 
     @Override
@@ -63,12 +104,12 @@ public class FactionInventory implements IInventory, IInteractionObject, INBTSer
 
     @Override
     public int getSizeInventory() {
-        return stacks.size();
+        return SIZE;
     }
 
     @Override
     public boolean isEmpty() {
-        ListIterator<ItemStack> it = stacks.listIterator();
+        ListIterator<ItemStack> it = this.getStacks().listIterator();
         while (it.hasNext()) {
             if (!it.next().isEmpty())
                 return false;
@@ -78,24 +119,24 @@ public class FactionInventory implements IInventory, IInteractionObject, INBTSer
 
     @Override
     public ItemStack getStackInSlot(int index) {
-        return stacks.get(index);
+        return this.getStacks().get(index);
     }
 
     @Override
     public ItemStack decrStackSize(int index, int count) {
         this.markDirty();
-        return ItemStackHelper.getAndSplit(stacks, index, count);
+        return ItemStackHelper.getAndSplit(this.getStacks(), index, count);
     }
 
     @Override
     public ItemStack removeStackFromSlot(int index) {
         this.markDirty();
-        return ItemStackHelper.getAndRemove(stacks, index);
+        return ItemStackHelper.getAndRemove(this.getStacks(), index);
     }
 
     @Override
     public void setInventorySlotContents(int index, ItemStack stack) {
-        this.stacks.set(index, stack);
+        this.getStacks().set(index, stack);
         if (stack.getCount() > this.getInventoryStackLimit())
             stack.setCount(this.getInventoryStackLimit());
         this.markDirty();
@@ -108,7 +149,11 @@ public class FactionInventory implements IInventory, IInteractionObject, INBTSer
 
     @Override
     public void markDirty() {
-        FactionModDatas.save();
+        // The items are read before they're modified, the saved compound
+        // becomes outdated
+        this.getStacks();
+        this.saved = null;
+        FactionModDatas.saveInventory(this.name);
     }
 
     @Override
@@ -142,7 +187,7 @@ public class FactionInventory implements IInventory, IInteractionObject, INBTSer
 
     @Override
     public void clear() {
-        this.stacks.clear();
+        this.getStacks().clear();
         this.markDirty();
     }
 
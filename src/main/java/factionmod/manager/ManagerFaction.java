@@ -1,6 +1,7 @@
 package factionmod.manager;
 
 import factionmod.FactionMod;
+import factionmod.capability.PlayerData;
 import factionmod.config.ConfigGeneral;
 import factionmod.faction.Faction;
 import factionmod.handler.EventHandlerFaction;
@@ -69,7 +70,7 @@ public class ManagerFaction extends ChunkManager {
     @Override
     public void onPlayerAttack(AttackEntityEvent event) {
         if (event.getTarget() instanceof EntityPlayer) {
-            if (faction.isMember(event.getEntityPlayer().getUniqueID()) || faction.isMember(event.getTarget().getUniqueID()))
+            if (isInFaction(event.getEntityPlayer()) || isInFaction((EntityPlayer) event.getTarget()))
                 if (faction.getLevel() < ConfigGeneral.getInt("immunity_level"))
                     event.setCanceled(true);
         }
@@ -83,6 +84,9 @@ public class ManagerFaction extends ChunkManager {
     }
 
     private boolean isInFaction(EntityPlayer player) {
+        final PlayerData data = PlayerData.get(player);
+        if (data != null)
+            return data.getFaction() == faction;
         return faction.isMember(player.getUniqueID());
     }
 
@@ -14,9 +14,11 @@ import factionmod.manager.IChunkManager;
 public class ChunkManagerCreator {
 
 	/**
-	 * Creates an {@link IChunkManager} and a {@link ZoneInstance} from a
+	 * Returns an {@link IChunkManager} and a {@link ZoneInstance} from a
 	 * {@link Zone} name and arguments. If the instanciation doesn't take
-	 * arguments, give an empty array.
+	 * arguments, give an empty array. The same arguments always give the same
+	 * instances (see {@link Zone#getSharedInstance(String[])}), so all the
+	 * chunks of a faction are handled by a single manager.
 	 * 
 	 * @param handlerName
 	 *            The name of the zone
@@ -27,17 +29,29 @@ public class ChunkManagerCreator {
 	public static Pair<IChunkManager, ZoneInstance> createChunkHandler(String handlerName, String... args) {
 		Zone zone = EventHandlerChunk.getZone(handlerName);
 		if (zone != null) {
-			if (zone.isStandAlone()) {
-				return Pair.<IChunkManager, ZoneInstance> apply(zone.getInstance(), new ZoneInstance(zone.getName(), new String[0]));
-			} else {
-				try {
-					return Pair.<IChunkManager, ZoneInstance> apply(zone.createInstance(args), new ZoneInstance(zone.getName(), args));
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
+			try {
+				return zone.getSharedInstance(args);
+			} catch (Exception e) {
+				e.printStackTrace();
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * Forgets the shared {@link IChunkManager} of a {@link Zone} created with
+	 * the given arguments.
+	 * 
+	 * @param handlerName
+	 *            The name of the zone
+	 * @param args
+	 *            The arguments
+	 */
+	public static void releaseChunkHandler(String handlerName, String... args) {
+		Zone zone = EventHandlerChunk.getZone(handlerName);
+		if (zone != null) {
+			zone.releaseSharedInstance(args);
+		}
+	}
+
 }
@@ -2,7 +2,12 @@ package factionmod.manager.instanciation;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 
+import akka.japi.Pair;
+import factionmod.enums.EnumChunkCallback;
 import factionmod.manager.IChunkManager;
 import factionmod.utils.ServerUtils;
 import net.minecraftforge.fml.common.event.FMLInterModComms.IMCMessage;
@@ -45,6 +50,15 @@ public class Zone {
     private IChunkManager instance;
     private Class<?>      clazz;
     private String        parameters;
+    private ZoneInstance  zoneInstance;
+    private int           callbacks;
+
+    /**
+     * The managers already instanciated with their {@link ZoneInstance}, each
+     * list of arguments is linked to a single manager shared by all the chunks
+     * using it.
+     */
+    private final HashMap<List<String>, Pair<IChunkManager, ZoneInstance>> sharedInstances = new HashMap<List<String>, Pair<IChunkManager, ZoneInstance>>();
 
     public Zone(String name, String className, String parameters) throws Exception {
         ServerUtils.getProfiler().startSection("zoneCreation");
@@ -60,6 +74,7 @@ public class Zone {
             throw new Exception("The class " + this.clazz.getName() + " has multiple constructors.");
         }
         this.standalone = false;
+        this.callbacks = EnumChunkCallback.getCallbacksOf(this.clazz);
 
         ServerUtils.getProfiler().endSection();
     }
@@ -77,6 +92,8 @@ public class Zone {
         }
         this.instance = (IChunkManager) f.get(null);
         this.standalone = true;
+        this.zoneInstance = new ZoneInstance(this.name, new String[0]);
+        this.callbacks = EnumChunkCallback.getCallbacksOf(this.instance.getClass());
         
         this.instance.handleParameters(this.parameters);
 
@@ -87,6 +104,16 @@ public class Zone {
         return this.name;
     }
 
+    /**
+     * Returns the mask of the callbacks the managers of this zone really
+     * handle, see {@link EnumChunkCallback}.
+     * 
+     * @return the mask of the callbacks
+     */
+    public int getCallbacks() {
+        return this.callbacks;
+    }
+
     /**
      * Must be called only if {@link Zone#isStandAlone()} returns true.
      * 
@@ -112,6 +139,44 @@ public class Zone {
         return instance;
     }
 
+    /**
+     * Returns the {@link IChunkManager} and the {@link ZoneInstance} for the
+     * given arguments. They are created the first time, then the same
+     * instances are returned each time the same arguments are given, so every
+     * chunk using them shares a single manager. For a stand-alone zone, the
+     * arguments are ignored.
+     * 
+     * @param args
+     *            The arguments to instanciate the IChunkManager
+     * @return the shared pair
+     * @throws Exception
+     */
+    public Pair<IChunkManager, ZoneInstance> getSharedInstance(String[] args) throws Exception {
+        if (this.standalone)
+            return Pair.<IChunkManager, ZoneInstance> apply(this.instance, this.zoneInstance);
+        final List<String> key = Arrays.asList(args);
+        Pair<IChunkManager, ZoneInstance> pair = this.sharedInstances.get(key);
+        if (pair == null) {
+            final String[] copy = args.clone();
+            pair = Pair.<IChunkManager, ZoneInstance> apply(this.createInstance(copy), new ZoneInstance(this.name, copy));
+            this.sharedInstances.put(Arrays.asList(copy), pair);
+        }
+        return pair;
+    }
+
+    /**
+     * Forgets the shared {@link IChunkManager} created with the given
+     * arguments. It should be called when the object it represents doesn't
+     * exist anymore (a disbanded faction for example), so a new manager is
+     * created if the same arguments are used again.
+     * 
+     * @param args
+     *            The arguments of the manager
+     */
+    public void releaseSharedInstance(String[] args) {
+        this.sharedInstances.remove(Arrays.asList(args));
+    }
+
     /**
      * Indicates if the zone has a pre-instanciated {@link IChunkManager}.
      * 
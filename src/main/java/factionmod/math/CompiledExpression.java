@@ -0,0 +1,410 @@
+package factionmod.math;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.DoubleBinaryOperator;
+
+import factionmod.math.Expression.ExpressionException;
+import factionmod.math.Expression.Function;
+import factionmod.math.Expression.LazyFunction;
+import factionmod.math.Expression.LazyNumber;
+import factionmod.math.Expression.Operator;
+
+/**
+ * An {@link Expression} parsed once into a tree of nodes. The variables are
+ * declared when the expression is compiled and their values are given to each
+ * evaluation, so it never has to be parsed again. The parts of the tree which
+ * don't depend on any variable are computed when it's compiled.
+ * <p>
+ * The tree is immutable and the operators and functions are shared by all the
+ * compiled expressions, it can be evaluated from any thread. It can be
+ * evaluated with {@link BigDecimal}, giving the same results as
+ * {@link Expression#eval()}, or with doubles which is much faster but doesn't
+ * round the intermediate results and returns infinity or NaN instead of
+ * throwing an exception when dividing by zero.
+ *
+ * @author BrokenSwing
+ *
+ */
+public final class CompiledExpression {
+
+    /** The operators and the functions used by all the compiled expressions */
+    private static final Expression                  TABLES           = new Expression("0");
+    private static final MathContext                 MC               = TABLES.getMathContext();
+
+    private static final Map<String, DoubleBinaryOperator> DOUBLE_OPERATORS = new HashMap<String, DoubleBinaryOperator>();
+    private static final Map<String, DoubleFunction>       DOUBLE_FUNCTIONS = new HashMap<String, DoubleFunction>();
+
+    static {
+        DOUBLE_OPERATORS.put("+", (a, b) -> a + b);
+        DOUBLE_OPERATORS.put("-", (a, b) -> a - b);
+        DOUBLE_OPERATORS.put("*", (a, b) -> a * b);
+        DOUBLE_OPERATORS.put("/", (a, b) -> a / b);
+        DOUBLE_OPERATORS.put("%", (a, b) -> a % b);
+        DOUBLE_OPERATORS.put("^", Math::pow);
+        DOUBLE_OPERATORS.put("&&", (a, b) -> a != 0 && b != 0 ? 1 : 0);
+        DOUBLE_OPERATORS.put("||", (a, b) -> a != 0 || b != 0 ? 1 : 0);
+        DOUBLE_OPERATORS.put(">", (a, b) -> a > b ? 1 : 0);
+        DOUBLE_OPERATORS.put(">=", (a, b) -> a >= b ? 1 : 0);
+        DOUBLE_OPERATORS.put("<", (a, b) -> a < b ? 1 : 0);
+        DOUBLE_OPERATORS.put("<=", (a, b) -> a <= b ? 1 : 0);
+        DOUBLE_OPERATORS.put("=", (a, b) -> a == b ? 1 : 0);
+        DOUBLE_OPERATORS.put("==", (a, b) -> a == b ? 1 : 0);
+        DOUBLE_OPERATORS.put("!=", (a, b) -> a != b ? 1 : 0);
+        DOUBLE_OPERATORS.put("<>", (a, b) -> a != b ? 1 : 0);
+
+        DOUBLE_FUNCTIONS.put("NOT", (args, v) -> args[0].evalDouble(v) == 0 ? 1 : 0);
+        DOUBLE_FUNCTIONS.put("IF", (args, v) -> args[0].evalDouble(v) != 0 ? args[1].evalDouble(v) : args[2].evalDouble(v));
+        DOUBLE_FUNCTIONS.put("RANDOM", (args, v) -> Math.random());
+        DOUBLE_FUNCTIONS.put("SIN", (args, v) -> Math.sin(Math.toRadians(args[0].evalDouble(v))));
+        DOUBLE_FUNCTIONS.put("COS", (args, v) -> Math.cos(Math.toRadians(args[0].evalDouble(v))));
+        DOUBLE_FUNCTIONS.put("TAN", (args, v) -> Math.tan(Math.toRadians(args[0].evalDouble(v))));
+        DOUBLE_FUNCTIONS.put("ASIN", (args, v) -> Math.toDegrees(Math.asin(args[0].evalDouble(v))));
+        DOUBLE_FUNCTIONS.put("ACOS", (args, v) -> Math.toDegrees(Math.acos(args[0].evalDouble(v))));
+        DOUBLE_FUNCTIONS.put("ATAN", (args, v) -> Math.toDegrees(Math.atan(args[0].evalDouble(v))));
+        DOUBLE_FUNCTIONS.put("SINH", (args, v) -> Math.sinh(args[0].evalDouble(v)));
+        DOUBLE_FUNCTIONS.put("COSH", (args, v) -> Math.cosh(args[0].evalDouble(v)));
+        DOUBLE_FUNCTIONS.put("TANH", (args, v) -> Math.tanh(args[0].evalDouble(v)));
+        DOUBLE_FUNCTIONS.put("RAD", (args, v) -> Math.toRadians(args[0].evalDouble(v)));
+        DOUBLE_FUNCTIONS.put("DEG", (args, v) -> Math.toDegrees(args[0].evalDouble(v)));
+        DOUBLE_FUNCTIONS.put("MAX", (args, v) -> {
+            double max = args[0].evalDouble(v);
+            for(int i = 1; i < args.length; i++) {
+                max = Math.max(max, args[i].evalDouble(v));
+            }
+            return max;
+        });
+        DOUBLE_FUNCTIONS.put("MIN", (args, v) -> {
+            double min = args[0].evalDouble(v);
+            for(int i = 1; i < args.length; i++) {
+                min = Math.min(min, args[i].evalDouble(v));
+            }
+            return min;
+        });
+        DOUBLE_FUNCTIONS.put("ABS", (args, v) -> Math.abs(args[0].evalDouble(v)));
+        DOUBLE_FUNCTIONS.put("LOG", (args, v) -> Math.log(args[0].evalDouble(v)));
+        DOUBLE_FUNCTIONS.put("LOG10", (args, v) -> Math.log10(args[0].evalDouble(v)));
+        DOUBLE_FUNCTIONS.put("ROUND", (args, v) -> {
+            final double scale = Math.pow(10, (int) args[1].evalDouble(v));
+            return Math.rint(args[0].evalDouble(v) * scale) / scale;
+        });
+        DOUBLE_FUNCTIONS.put("FLOOR", (args, v) -> Math.floor(args[0].evalDouble(v)));
+        DOUBLE_FUNCTIONS.put("CEILING", (args, v) -> Math.ceil(args[0].evalDouble(v)));
+        DOUBLE_FUNCTIONS.put("SQRT", (args, v) -> {
+            final double x = args[0].evalDouble(v);
+            if (x < 0)
+                throw new ExpressionException("Argument to SQRT() function must not be negative");
+            return Math.sqrt(x);
+        });
+    }
+
+    private final String       expression;
+    private final List<String> variables;
+    private final boolean[]    used;
+    private final Node         root;
+
+    private CompiledExpression(String expression, List<String> variables, boolean[] used, Node root) {
+        this.expression = expression;
+        this.variables = variables;
+        this.used = used;
+        this.root = root;
+    }
+
+    /**
+     * Parses an expression.
+     *
+     * @param expression
+     *            The expression, e.g. <code>"1.3 * level + 3"</code>
+     * @param variables
+     *            The names of the variables used by the expression, their
+     *            values are given in the same order to the evaluations. The
+     *            names aren't case sensitive.
+     * @return the compiled expression
+     * @throws ExpressionException
+     *             if the expression isn't valid
+     */
+    public static CompiledExpression compile(String expression, String... variables) {
+        final Expression parser = new Expression(expression);
+        final TreeMap<String, Integer> indexes = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+        final boolean[] used = new boolean[variables.length];
+        for(int i = 0; i < variables.length; i++) {
+            parser.setVariable(variables[i], BigDecimal.ZERO);
+            indexes.put(variables[i], i);
+        }
+
+        final Deque<Node> stack = new ArrayDeque<Node>();
+        for(String token : parser.getRPN()) {
+            final Operator operator = TABLES.getOperator(token);
+            final Integer index = indexes.get(token);
+            if (operator != null) {
+                final Node right = stack.pop();
+                final Node left = stack.pop();
+                stack.push(fold(new Binary(operator, DOUBLE_OPERATORS.get(token), left, right)));
+            } else if (index != null) {
+                stack.push(new Variable(index));
+                used[index] = true;
+            } else if (TABLES.getVariable(token) != null) {
+                final BigDecimal value = TABLES.getVariable(token).round(MC);
+                stack.push(new Constant(value.doubleValue(), value));
+            } else if (TABLES.getFunction(token) != null) {
+                final ArrayList<Node> args = new ArrayList<Node>();
+                while (stack.peek() != PARAMS_START) {
+                    args.add(0, stack.pop());
+                }
+                stack.pop();
+                final String name = token.toUpperCase(Locale.ROOT);
+                stack.push(fold(new Call(TABLES.getFunction(token), DOUBLE_FUNCTIONS.get(name), args.toArray(new Node[args.size()]), !"RANDOM".equals(name))));
+            } else if ("(".equals(token)) {
+                stack.push(PARAMS_START);
+            } else {
+                try {
+                    stack.push(new Constant(Double.parseDouble(token), new BigDecimal(token, MC)));
+                } catch (NumberFormatException e) {
+                    throw new ExpressionException("Unknown variable " + token);
+                }
+            }
+        }
+        return new CompiledExpression(expression, Collections.unmodifiableList(Arrays.asList(variables.clone())), used, stack.pop());
+    }
+
+    /**
+     * Replaces a node by its value if it doesn't depend on any variable. If
+     * its evaluation fails, the node is kept so the evaluations fail the same
+     * way.
+     */
+    private static Node fold(Node node) {
+        if (!node.isConstant())
+            return node;
+        try {
+            return new Constant(node.evalDouble(new double[0]), node.eval(new BigDecimal[0]));
+        } catch (ExpressionException | ArithmeticException e) {
+            return node;
+        }
+    }
+
+    /**
+     * Evaluates the expression with doubles.
+     *
+     * @param values
+     *            The values of the variables, in the order they were declared
+     * @return the result
+     */
+    public double evalDouble(double... values) {
+        if (values.length < this.variables.size())
+            throw new ExpressionException("Expected " + this.variables.size() + " values, got " + values.length);
+        return this.root.evalDouble(values);
+    }
+
+    /**
+     * Evaluates the expression with {@link BigDecimal}, the result is the same
+     * as {@link Expression#eval()}.
+     *
+     * @param values
+     *            The values of the variables, in the order they were declared
+     * @return the result
+     */
+    public BigDecimal eval(BigDecimal... values) {
+        if (values.length < this.variables.size())
+            throw new ExpressionException("Expected " + this.variables.size() + " values, got " + values.length);
+        return this.root.eval(values).stripTrailingZeros();
+    }
+
+    /**
+     * Indicates if the expression depends on the variable. The value of an
+     * unused variable can be anything.
+     *
+     * @param index
+     *            The index of the variable
+     * @return true if the variable appears in the expression
+     */
+    public boolean usesVariable(int index) {
+        return this.used[index];
+    }
+
+    public String getExpression() {
+        return this.expression;
+    }
+
+    /**
+     * Returns the names of the variables, in the order of their values.
+     *
+     * @return an unmodifiable list
+     */
+    public List<String> getVariables() {
+        return this.variables;
+    }
+
+    @Override
+    public String toString() {
+        return this.expression;
+    }
+
+    /**
+     * The implementation of a function with doubles. The arguments are
+     * evaluated by the function, so a function like IF evaluates only the
+     * arguments it needs.
+     */
+    private interface DoubleFunction {
+
+        double apply(Node[] args, double[] values);
+
+    }
+
+    private static abstract class Node {
+
+        abstract double evalDouble(double[] values);
+
+        abstract BigDecimal eval(BigDecimal[] values);
+
+        /**
+         * Indicates if the node always has the same value.
+         */
+        abstract boolean isConstant();
+
+    }
+
+    /** Marks the start of the arguments of a function while compiling */
+    private static final Node PARAMS_START = new Constant(0, BigDecimal.ZERO);
+
+    private static final class Constant extends Node {
+
+        private final double     doubleValue;
+        private final BigDecimal value;
+
+        private Constant(double doubleValue, BigDecimal value) {
+            this.doubleValue = doubleValue;
+            this.value = value;
+        }
+
+        @Override
+        double evalDouble(double[] values) {
+            return this.doubleValue;
+        }
+
+        @Override
+        BigDecimal eval(BigDecimal[] values) {
+            return this.value;
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+
+    }
+
+    private static final class Variable extends Node {
+
+        private final int index;
+
+        private Variable(int index) {
+            this.index = index;
+        }
+
+        @Override
+        double evalDouble(double[] values) {
+            return values[this.index];
+        }
+
+        @Override
+        BigDecimal eval(BigDecimal[] values) {
+            return values[this.index].round(MC);
+        }
+
+        @Override
+        boolean isConstant() {
+            return false;
+        }
+
+    }
+
+    private static final class Binary extends Node {
+
+        private final Operator             operator;
+        private final DoubleBinaryOperator doubleOperator;
+        private final Node                 left;
+        private final Node                 right;
+
+        private Binary(Operator operator, DoubleBinaryOperator doubleOperator, Node left, Node right) {
+            this.operator = operator;
+            this.doubleOperator = doubleOperator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double evalDouble(double[] values) {
+            return this.doubleOperator.applyAsDouble(this.left.evalDouble(values), this.right.evalDouble(values));
+        }
+
+        @Override
+        BigDecimal eval(BigDecimal[] values) {
+            return this.operator.eval(this.left.eval(values), this.right.eval(values));
+        }
+
+        @Override
+        boolean isConstant() {
+            return this.left.isConstant() && this.right.isConstant();
+        }
+
+    }
+
+    private static final class Call extends Node {
+
+        private final LazyFunction   function;
+        private final DoubleFunction doubleFunction;
+        private final Node[]         args;
+        private final boolean        deterministic;
+
+        private Call(LazyFunction function, DoubleFunction doubleFunction, Node[] args, boolean deterministic) {
+            this.function = function;
+            this.doubleFunction = doubleFunction;
+            this.args = args;
+            this.deterministic = deterministic;
+        }
+
+        @Override
+        double evalDouble(double[] values) {
+            return this.doubleFunction.apply(this.args, values);
+        }
+
+        @Override
+        BigDecimal eval(BigDecimal[] values) {
+            if (this.function instanceof Function) {
+                final ArrayList<BigDecimal> params = new ArrayList<BigDecimal>(this.args.length);
+                for(Node arg : this.args) {
+                    params.add(arg.eval(values));
+                }
+                return ((Function) this.function).eval(params);
+            }
+            final ArrayList<LazyNumber> params = new ArrayList<LazyNumber>(this.args.length);
+            for(Node arg : this.args) {
+                params.add(() -> arg.eval(values));
+            }
+            return this.function.lazyEval(params).eval();
+        }
+
+        @Override
+        boolean isConstant() {
+            if (!this.deterministic)
+                return false;
+            for(Node arg : this.args) {
+                if (!arg.isConstant())
+                    return false;
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -1372,7 +1372,7 @@ public class Expression {
      *
      * @return The cached RPN instance.
      */
-    private List<String> getRPN() {
+    List<String> getRPN() {
         if (rpn == null) {
             rpn = shuntingYard(this.expression);
             validate(rpn);
@@ -1380,6 +1380,34 @@ public class Expression {
         return rpn;
     }
 
+    /**
+     * Returns the operator with the given name, used by
+     * {@link CompiledExpression}.
+     */
+    Operator getOperator(String name) {
+        return operators.get(name);
+    }
+
+    /**
+     * Returns the function with the given name, used by
+     * {@link CompiledExpression}.
+     */
+    LazyFunction getFunction(String name) {
+        return functions.get(name.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the value of the variable with the given name, used by
+     * {@link CompiledExpression}.
+     */
+    BigDecimal getVariable(String name) {
+        return variables.get(name);
+    }
+
+    MathContext getMathContext() {
+        return mc;
+    }
+
     /**
      * Check that the expression has enough numbers and variables to fit the
      * requirements of the operators and functions, also check for only 1 result
@@ -0,0 +1,300 @@
+package factionmod.utils;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map using chunk coordinates packed in a long as
+ * keys. It doesn't box the keys and doesn't allocate anything on lookup, a
+ * lookup being most of the time a single array probe. The values can't be
+ * null.
+ *
+ * @author BrokenSwing
+ *
+ * @param <V>
+ *            The type of the values
+ */
+public class ChunkMap<V> {
+
+    private static final int   MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR  = 0.5F;
+
+    private long[]             keys;
+    private Object[]           values;
+    private int                mask;
+    private int                size;
+    private int                threshold;
+
+    public ChunkMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates a map able to hold the given amount of chunks without being
+     * resized.
+     *
+     * @param expected
+     *            The expected amount of chunks
+     */
+    public ChunkMap(int expected) {
+        this.allocate(capacityFor(expected));
+    }
+
+    /**
+     * Packs the coordinates of a chunk in a long. It's the same layout as
+     * {@link net.minecraft.util.math.ChunkPos#asLong(int, int)}.
+     *
+     * @param x
+     *            The x coordinate of the chunk
+     * @param z
+     *            The z coordinate of the chunk
+     * @return the key of the chunk
+     */
+    public static long key(int x, int z) {
+        return (long) x & 0xFFFFFFFFL | ((long) z & 0xFFFFFFFFL) << 32;
+    }
+
+    /**
+     * Returns the x coordinate of the chunk packed in the given key.
+     *
+     * @param key
+     *            The key
+     * @return the x coordinate
+     */
+    public static int keyX(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Returns the z coordinate of the chunk packed in the given key.
+     *
+     * @param key
+     *            The key
+     * @return the z coordinate
+     */
+    public static int keyZ(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) (h ^ h >>> 16);
+    }
+
+    private static int capacityFor(int expected) {
+        int needed = (int) Math.min(1L << 30, (long) Math.ceil(Math.max(expected, 1) / LOAD_FACTOR));
+        int capacity = MIN_CAPACITY;
+        while (capacity < needed) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int indexOf(long key) {
+        int i = hash(key) & this.mask;
+        while (this.values[i] != null) {
+            if (this.keys[i] == key)
+                return i;
+            i = (i + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value linked to the chunk with the given key.
+     *
+     * @param key
+     *            The key of the chunk, see {@link ChunkMap#key(int, int)}
+     * @return the value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = hash(key) & this.mask;
+        Object value;
+        while ((value = this.values[i]) != null) {
+            if (this.keys[i] == key)
+                return (V) value;
+            i = (i + 1) & this.mask;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value linked to the chunk at the given coordinates.
+     *
+     * @param x
+     *            The x coordinate of the chunk
+     * @param z
+     *            The z coordinate of the chunk
+     * @return the value or null
+     */
+    public V get(int x, int z) {
+        return this.get(key(x, z));
+    }
+
+    /**
+     * Indicates if a value is linked to the chunk with the given key.
+     *
+     * @param key
+     *            The key of the chunk
+     * @return true if the chunk is in the map
+     */
+    public boolean containsKey(long key) {
+        return this.indexOf(key) >= 0;
+    }
+
+    /**
+     * Links a value to a chunk.
+     *
+     * @param key
+     *            The key of the chunk
+     * @param value
+     *            The value, can't be null
+     * @return the previous value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null)
+            throw new NullPointerException("A ChunkMap can't contain null values");
+        int i = hash(key) & this.mask;
+        while (this.values[i] != null) {
+            if (this.keys[i] == key) {
+                V previous = (V) this.values[i];
+                this.values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & this.mask;
+        }
+        this.keys[i] = key;
+        this.values[i] = value;
+        if (++this.size > this.threshold)
+            this.rehash(this.keys.length << 1);
+        return null;
+    }
+
+    /**
+     * Removes the value linked to a chunk.
+     *
+     * @param key
+     *            The key of the chunk
+     * @return the removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = this.indexOf(key);
+        if (i < 0)
+            return null;
+        V previous = (V) this.values[i];
+        this.shiftKeys(i);
+        this.size--;
+        return previous;
+    }
+
+    /**
+     * Closes the gap left by a removed entry, so the probing sequences stay
+     * valid without using tombstones.
+     */
+    private void shiftKeys(int pos) {
+        int last;
+        int slot;
+        for(;;) {
+            pos = ((last = pos) + 1) & this.mask;
+            for(;;) {
+                if (this.values[pos] == null) {
+                    this.values[last] = null;
+                    return;
+                }
+                slot = hash(this.keys[pos]) & this.mask;
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos)
+                    break;
+                pos = (pos + 1) & this.mask;
+            }
+            this.keys[last] = this.keys[pos];
+            this.values[last] = this.values[pos];
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        this.allocate(capacity);
+        for(int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != null) {
+                int i = hash(oldKeys[j]) & this.mask;
+                while (this.values[i] != null) {
+                    i = (i + 1) & this.mask;
+                }
+                this.keys[i] = oldKeys[j];
+                this.values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Makes sure the map can hold the given amount of chunks without being
+     * resized.
+     *
+     * @param expected
+     *            The expected amount of chunks
+     */
+    public void ensureCapacity(int expected) {
+        int capacity = capacityFor(expected);
+        if (capacity > this.keys.length)
+            this.rehash(capacity);
+    }
+
+    /**
+     * Returns the amount of chunks in the map.
+     *
+     * @return the size of the map
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Removes all the chunks from the map.
+     */
+    public void clear() {
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+
+    /**
+     * Calls the visitor for each chunk of the map. The map must not be
+     * modified during the iteration.
+     *
+     * @param visitor
+     *            The visitor
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<? super V> visitor) {
+        for(int i = 0; i < this.values.length; i++) {
+            if (this.values[i] != null) {
+                visitor.visit(this.keys[i], (V) this.values[i]);
+            }
+        }
+    }
+
+    /**
+     * Used to iterate over a {@link ChunkMap} without allocating entries.
+     */
+    @FunctionalInterface
+    public static interface Visitor<V> {
+
+        void visit(long key, V value);
+
+    }
+
+}
@@ -0,0 +1,174 @@
+package factionmod.utils;
+
+import java.util.Arrays;
+
+/**
+ * Links chunks of any dimension to a value. Each dimension has its own
+ * {@link ChunkMap}, the dimensions are kept in a small array because a server
+ * rarely has more than a few of them.
+ *
+ * @author BrokenSwing
+ *
+ * @param <V>
+ *            The type of the values
+ */
+public class ClaimIndex<V> {
+
+    private int[]         dimensions = new int[0];
+    private ChunkMap<V>[] maps       = newArray(0);
+
+    @SuppressWarnings("unchecked")
+    private static <V> ChunkMap<V>[] newArray(int length) {
+        return new ChunkMap[length];
+    }
+
+    /**
+     * Returns the map of the chunks of the given dimension.
+     *
+     * @param dimension
+     *            The dimension
+     * @return the map or null if no chunk of this dimension is indexed
+     */
+    public ChunkMap<V> getDimension(int dimension) {
+        final int[] dims = this.dimensions;
+        for(int i = 0; i < dims.length; i++) {
+            if (dims[i] == dimension)
+                return this.maps[i];
+        }
+        return null;
+    }
+
+    private ChunkMap<V> getOrCreateDimension(int dimension) {
+        ChunkMap<V> map = this.getDimension(dimension);
+        if (map == null) {
+            map = new ChunkMap<V>();
+            int length = this.dimensions.length;
+            this.dimensions = Arrays.copyOf(this.dimensions, length + 1);
+            this.maps = Arrays.copyOf(this.maps, length + 1);
+            this.dimensions[length] = dimension;
+            this.maps[length] = map;
+        }
+        return map;
+    }
+
+    /**
+     * Returns the value linked to the chunk.
+     *
+     * @param dimension
+     *            The dimension of the chunk
+     * @param x
+     *            The x coordinate of the chunk
+     * @param z
+     *            The z coordinate of the chunk
+     * @return the value or null
+     */
+    public V get(int dimension, int x, int z) {
+        final ChunkMap<V> map = this.getDimension(dimension);
+        return map == null ? null : map.get(ChunkMap.key(x, z));
+    }
+
+    public V get(DimensionalPosition position) {
+        return this.get(position.getDimension(), position.getPos().x, position.getPos().z);
+    }
+
+    /**
+     * Links a value to a chunk.
+     *
+     * @param dimension
+     *            The dimension of the chunk
+     * @param x
+     *            The x coordinate of the chunk
+     * @param z
+     *            The z coordinate of the chunk
+     * @param value
+     *            The value, can't be null
+     * @return the previous value or null
+     */
+    public V put(int dimension, int x, int z, V value) {
+        return this.getOrCreateDimension(dimension).put(ChunkMap.key(x, z), value);
+    }
+
+    public V put(DimensionalPosition position, V value) {
+        return this.put(position.getDimension(), position.getPos().x, position.getPos().z, value);
+    }
+
+    /**
+     * Removes the value linked to a chunk.
+     *
+     * @param dimension
+     *            The dimension of the chunk
+     * @param x
+     *            The x coordinate of the chunk
+     * @param z
+     *            The z coordinate of the chunk
+     * @return the removed value or null
+     */
+    public V remove(int dimension, int x, int z) {
+        final ChunkMap<V> map = this.getDimension(dimension);
+        return map == null ? null : map.remove(ChunkMap.key(x, z));
+    }
+
+    public V remove(DimensionalPosition position) {
+        return this.remove(position.getDimension(), position.getPos().x, position.getPos().z);
+    }
+
+    /**
+     * Makes sure the given dimension can hold the given amount of chunks
+     * without being resized.
+     *
+     * @param dimension
+     *            The dimension
+     * @param expected
+     *            The expected amount of chunks
+     */
+    public void ensureCapacity(int dimension, int expected) {
+        this.getOrCreateDimension(dimension).ensureCapacity(expected);
+    }
+
+    /**
+     * Returns the amount of chunks indexed, all dimensions included.
+     *
+     * @return the amount of chunks
+     */
+    public int size() {
+        int size = 0;
+        for(ChunkMap<V> map : this.maps) {
+            size += map.size();
+        }
+        return size;
+    }
+
+    /**
+     * Removes all the chunks of all dimensions.
+     */
+    public void clear() {
+        for(ChunkMap<V> map : this.maps) {
+            map.clear();
+        }
+    }
+
+    /**
+     * Calls the visitor for each indexed chunk. The index must not be modified
+     * during the iteration.
+     *
+     * @param visitor
+     *            The visitor
+     */
+    public void forEach(Visitor<? super V> visitor) {
+        for(int i = 0; i < this.maps.length; i++) {
+            final int dimension = this.dimensions[i];
+            this.maps[i].forEach((key, value) -> visitor.visit(dimension, ChunkMap.keyX(key), ChunkMap.keyZ(key), value));
+        }
+    }
+
+    /**
+     * Used to iterate over a {@link ClaimIndex}.
+     */
+    @FunctionalInterface
+    public static interface Visitor<V> {
+
+        void visit(int dimension, int x, int z, V value);
+
+    }
+
+}
@@ -0,0 +1,153 @@
+package factionmod.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of chunks which also knows, for each chunk, how many of its four
+ * neighbours are in the set. Adding, removing, testing a chunk or knowing if
+ * it's at the edge of the set are done in constant time, and the chunks at the
+ * edge are kept apart so they can be listed without scanning the whole set.
+ *
+ * @author BrokenSwing
+ *
+ */
+public class ClaimSet {
+
+    private static final int[]      NEIGHBOURS_X = { 1, -1, 0, 0 };
+    private static final int[]      NEIGHBOURS_Z = { 0, 0, 1, -1 };
+
+    private final ClaimIndex<Claim> claims       = new ClaimIndex<Claim>();
+    private final ClaimIndex<Claim> border       = new ClaimIndex<Claim>();
+    private int                     size         = 0;
+
+    /**
+     * Adds a chunk to the set.
+     *
+     * @param position
+     *            The position of the chunk
+     * @return true if the chunk wasn't in the set
+     */
+    public boolean add(DimensionalPosition position) {
+        final int dim = position.getDimension();
+        final int x = position.getPos().x;
+        final int z = position.getPos().z;
+        if (this.claims.get(dim, x, z) != null)
+            return false;
+        final Claim claim = new Claim(position);
+        for(int i = 0; i < 4; i++) {
+            final Claim neighbour = this.claims.get(dim, x + NEIGHBOURS_X[i], z + NEIGHBOURS_Z[i]);
+            if (neighbour != null) {
+                claim.neighbours++;
+                if (++neighbour.neighbours == 4)
+                    this.border.remove(neighbour.position);
+            }
+        }
+        this.claims.put(dim, x, z, claim);
+        if (claim.neighbours < 4)
+            this.border.put(dim, x, z, claim);
+        this.size++;
+        return true;
+    }
+
+    /**
+     * Removes a chunk from the set.
+     *
+     * @param position
+     *            The position of the chunk
+     * @return true if the chunk was in the set
+     */
+    public boolean remove(DimensionalPosition position) {
+        final int dim = position.getDimension();
+        final int x = position.getPos().x;
+        final int z = position.getPos().z;
+        if (this.claims.remove(dim, x, z) == null)
+            return false;
+        this.border.remove(dim, x, z);
+        for(int i = 0; i < 4; i++) {
+            final Claim neighbour = this.claims.get(dim, x + NEIGHBOURS_X[i], z + NEIGHBOURS_Z[i]);
+            if (neighbour != null && neighbour.neighbours-- == 4)
+                this.border.put(neighbour.position, neighbour);
+        }
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Indicates if the chunk is in the set.
+     *
+     * @param position
+     *            The position of the chunk
+     * @return true if the chunk is in the set
+     */
+    public boolean contains(DimensionalPosition position) {
+        return this.claims.get(position) != null;
+    }
+
+    /**
+     * Indicates if the chunk is in the set and at least one of its four
+     * neighbours isn't.
+     *
+     * @param position
+     *            The position of the chunk
+     * @return true if the chunk is at the edge of the set
+     */
+    public boolean isAtEdge(DimensionalPosition position) {
+        return this.border.get(position) != null;
+    }
+
+    /**
+     * Returns the amount of neighbours of the chunk which are in the set.
+     *
+     * @param position
+     *            The position of the chunk
+     * @return the amount of neighbours, 0 if the chunk isn't in the set
+     */
+    public int getNeighbours(DimensionalPosition position) {
+        final Claim claim = this.claims.get(position);
+        return claim == null ? 0 : claim.neighbours;
+    }
+
+    /**
+     * Returns the amount of chunks in the set.
+     *
+     * @return the size of the set
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns a new list containing the chunks of the set.
+     *
+     * @return a list of positions
+     */
+    public List<DimensionalPosition> toList() {
+        final ArrayList<DimensionalPosition> list = new ArrayList<DimensionalPosition>(this.size);
+        this.claims.forEach((dim, x, z, claim) -> list.add(claim.position));
+        return list;
+    }
+
+    /**
+     * Returns a new list containing the chunks at the edge of the set.
+     *
+     * @return a list of positions
+     */
+    public List<DimensionalPosition> getBorder() {
+        final ArrayList<DimensionalPosition> list = new ArrayList<DimensionalPosition>();
+        this.border.forEach((dim, x, z, claim) -> list.add(claim.position));
+        return list;
+    }
+
+    private static final class Claim {
+
+        private final DimensionalPosition position;
+        private int                       neighbours;
+
+        private Claim(DimensionalPosition position) {
+            this.position = position;
+        }
+
+    }
+
+}
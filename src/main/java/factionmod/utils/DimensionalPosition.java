@@ -70,8 +70,7 @@ public class DimensionalPosition implements INBTSerializable<NBTTagCompound> {
     }
 
     public static DimensionalPosition from(World world, BlockPos pos) {
-        ChunkPos chunkPos = world.getChunkFromBlockCoords(pos).getPos();
-        return new DimensionalPosition(chunkPos, world.provider.getDimension());
+        return new DimensionalPosition(new ChunkPos(pos), world.provider.getDimension());
     }
 
     public static DimensionalPosition from(Entity entity) {